@@ -2,6 +2,7 @@ import React, { useState, useEffect } from 'react';
 import { Link } from 'react-router-dom';
 import { useAuth } from '../contexts/AuthContext';
 import api from '../utils/api';
+import { favoriteStatus } from '../utils/FavoriteStatus';
 import './ProductCard.css';
 
 const API_BASE_URL = 'http://localhost:8080';
@@ -29,12 +30,9 @@ export default function ProductCard({ product, updateCartCount, setShowLogin })
           setIsFavorited(savedStatus === 'true');
         }
 
-        const response = await api.get(`/api/favorites/${productId}/status`);
-        if (response.data.success) {
-          const actualStatus = response.data.isFavorited;
-          setIsFavorited(actualStatus);
-          localStorage.setItem(`favorite_${productId}`, actualStatus.toString());
-        }
+        const actualStatus = await favoriteStatus.load(productId);
+        setIsFavorited(actualStatus);
+        localStorage.setItem(`favorite_${productId}`, actualStatus.toString());
       } catch (error) {
         console.error('檢查收藏狀態失敗:', error);
       }
@@ -1,10 +1,11 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import { useParams, useNavigate } from 'react-router-dom';
 import { useAuth } from '../contexts/AuthContext';
 import { useCart } from '../contexts/CartContext';
 import Header from '../components/Header';
 import LoginModal from '../components/LoginModal';
 import Footer from '../components/Footer';
+import { idempotencyKey } from '../utils/IdempotencyKey';
 import './ProductDetail.css';
 
 const API_BASE_URL = 'http://localhost:8080';
@@ -26,6 +27,8 @@ export default function ProductDetail({ onCartClick }) {
   const [bidAmount, setBidAmount] = useState("");
   const [recentBids, setRecentBids] = useState([]);
   const [timer, setTimer] = useState("");
+  const bidKeyRef = useRef(null);
+  const buyNowKeyRef = useRef(null);
    const { addToCart, cartCount } = useCart();
 
   const isAuctionProduct = () => {
@@ -164,9 +167,13 @@ const bidAmountNum = Number(bidAmount);
       const res = await fetch(`${API_BASE_URL}/api/auction/${product.id}/bid`, {
         method: "POST",
         credentials: 'include', 
-        headers: { "Content-Type": "application/json" },
+        headers: {
+          "Content-Type": "application/json",
+          "Idempotency-Key": idempotencyKey(bidKeyRef, { productId: product.id, amount: bidAmountNum })
+        },
         body: JSON.stringify({ amount: bidAmountNum })
       });
+      bidKeyRef.current = null;
       
       const data = await res.json();
       
@@ -207,8 +214,12 @@ const bidAmountNum = Number(bidAmount);
           const res = await fetch(`${API_BASE_URL}/api/auction/${product.id}/buy-now`, {
             method: "POST",
             credentials: 'include',
-            headers: { "Content-Type": "application/json" }
+            headers: {
+              "Content-Type": "application/json",
+              "Idempotency-Key": idempotencyKey(buyNowKeyRef, { productId: product.id })
+            }
           });
+          buyNowKeyRef.current = null;
           
           if (res.ok) {
             alert("直購成功！競標已結束。");
@@ -442,7 +453,7 @@ const bidAmountNum = Number(bidAmount);
                     <div className="auction-stat">
                       <span className="stat-label">目前領先：</span>
                       <span className="stat-value">
-                        {isLoggedIn && user?.username === auctionInfo.currentWinner ? (
+                        {isLoggedIn && user?.userId === auctionInfo.currentWinnerId ? (
                           <span className="current-winner-self">🎯 你是目前最高出價</span>
                         ) : (
                           auctionInfo.currentWinner
@@ -483,7 +494,7 @@ const bidAmountNum = Number(bidAmount);
                   </div>
                 ) : (
                   <div className="auction-ended">
-                    {isLoggedIn && user?.username === auctionInfo?.currentWinner ? (
+                    {isLoggedIn && user?.userId === auctionInfo?.currentWinnerId ? (
                       <div className="winner-message">
                         🎉 <span className="winner-text">恭喜你得標！</span>
                       </div>
@@ -595,7 +606,7 @@ const bidAmountNum = Number(bidAmount);
            </div>
               ) : (
               isAuctionEnded() ? (
-                isLoggedIn && user?.username === auctionInfo?.currentWinner ? (
+                isLoggedIn && user?.userId === auctionInfo?.currentWinnerId ? (
                  <button
   className="action-btn winner-pay-btn"
   onClick={() => {
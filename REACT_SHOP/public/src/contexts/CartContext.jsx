@@ -59,15 +59,34 @@ export function CartProvider({ children }) {
   };
 
 
+  // 後端異動只回傳變動的項目與新的總數量，直接套用到目前的購物車
+  const applyCartDelta = (data) => {
+    if (!data) return;
+    setCartItems(prev => {
+      let next = prev;
+      if (data.removedCartItemId != null) {
+        next = next.filter(item => item.cartItemId !== data.removedCartItemId);
+      }
+      if (data.item) {
+        const exists = next.some(item => item.cartItemId === data.item.cartItemId);
+        next = exists
+          ? next.map(item => item.cartItemId === data.item.cartItemId ? data.item : item)
+          : [...next, data.item];
+      }
+      return next;
+    });
+    if (data.totalQuantity != null) {
+      setCartCount(data.totalQuantity);
+    }
+  };
+
   const updateCartItem = async (cartItemId, quantity) => {
     if (quantity < 1) return;
     
     try {
       console.log('🔄 更新購物車項目:', cartItemId, quantity);
-      await api.put(`/api/cart/${cartItemId}?quantity=${quantity}`);
-      
-
-      await fetchCart();
+      const res = await api.put(`/api/cart/${cartItemId}?quantity=${quantity}`);
+      applyCartDelta(res.data);
       console.log('✅ 購物車項目更新完成');
     } catch (err) {
       console.error('❌ 更新購物車失敗:', err);
@@ -82,10 +101,8 @@ export function CartProvider({ children }) {
   const removeCartItem = async (cartItemId) => {
     try {
       console.log('🗑️ 移除購物車項目:', cartItemId);
-      await api.delete(`/api/cart/${cartItemId}`);
-      
-
-      await fetchCart();
+      const res = await api.delete(`/api/cart/${cartItemId}`);
+      applyCartDelta(res.data);
       console.log('✅ 購物車項目移除完成');
     } catch (err) {
       console.error('❌ 移除購物車失敗:', err);
@@ -151,7 +168,7 @@ export function CartProvider({ children }) {
     try {
       console.log('🛒 開始加入購物車:', productData);
       const res = await api.post("/api/cart", productData);
-      await fetchCart();
+      applyCartDelta(res.data);
       console.log('✅ 商品已加入購物車，數量已更新');
       return res.data;
     } catch (err) {
@@ -5,6 +5,7 @@ import Footer from "../components/Footer";
 import "./CheckoutPage.css";
 import { useCart } from "../contexts/CartContext";
 import { useLocation } from "react-router-dom";
+import { idempotencyKey } from "../utils/IdempotencyKey";
 
 
 const API_BASE_URL = 'http://localhost:8080';
@@ -17,6 +18,16 @@ function getImageUrl(imageUrl) {
 }
 
 
+//釋放庫存預留（離開頁面時也要送出）
+function releaseReservation(reservationId) {
+  fetch(`${API_BASE_URL}/api/checkout/reservations/${reservationId}`, {
+    method: 'DELETE',
+    credentials: 'include',
+    keepalive: true
+  }).catch(err => console.warn("釋放庫存預留失敗:", err));
+}
+
+
 function ProductImage({ item }) {
  const [imgSrc, setImgSrc] = useState(() => {
     return getImageUrl(item.imageUrl);
@@ -67,6 +78,7 @@ export default function CheckoutPage() {
   });
   
   const [submitting, setSubmitting] = useState(false);
+  const orderKeyRef = React.useRef(null);
   const [error, setError] = useState("");
    const location = useLocation();
   const { items } = location.state || {};
@@ -74,6 +86,48 @@ export default function CheckoutPage() {
 
   const orderItems = items || cartItems;
 
+  //進入結帳頁時預留庫存，離開時釋放；項目有變動時重新預留
+  const reservationRef = React.useRef(null);
+  const reservationItems = JSON.stringify(orderItems.map(item => ({
+    productId: item.productId || item.id,
+    skuId: item.skuId,
+    quantity: item.quantity
+  })));
+
+  React.useEffect(() => {
+    const lines = JSON.parse(reservationItems);
+    if (lines.length === 0) return;
+    let cancelled = false;
+
+    fetch(`${API_BASE_URL}/api/checkout/reservations`, {
+      method: 'POST',
+      headers: { 'Content-Type': 'application/json' },
+      credentials: 'include',
+      body: JSON.stringify({ orderItems: lines })
+    })
+      .then(res => res.json().then(data => ({ ok: res.ok, data })))
+      .then(({ ok, data }) => {
+        if (ok && data.reservationId) {
+          if (cancelled) {
+            releaseReservation(data.reservationId);
+          } else {
+            reservationRef.current = data.reservationId;
+          }
+        } else if (!cancelled) {
+          setError(data.message || "商品庫存不足");
+        }
+      })
+      .catch(err => console.warn("庫存預留失敗:", err));
+
+    return () => {
+      cancelled = true;
+      if (reservationRef.current) {
+        releaseReservation(reservationRef.current);
+        reservationRef.current = null;
+      }
+    };
+  }, [reservationItems]);
+
   
   React.useEffect(() => {
     console.log('CheckoutPage cartItems:', cartItems);
@@ -136,6 +190,7 @@ export default function CheckoutPage() {
   price: item.price || item.current_price
 })),
       totalAmount: totalAmount,
+      reservationId: reservationRef.current,
       shippingInfo: {
         name: shippingInfo.name,
         phone: shippingInfo.phone,
@@ -150,10 +205,13 @@ export default function CheckoutPage() {
       method: 'POST',
       headers: {
         'Content-Type': 'application/json',
+        'Idempotency-Key': idempotencyKey(orderKeyRef, orderData),
       },
       credentials: 'include',
       body: JSON.stringify(orderData)
     });
+    // 已收到回應，下次送出用新的 Key
+    orderKeyRef.current = null;
 
     if (!response.ok) {
       let errorMessage = `HTTP ${response.status}: ${response.statusText}`;
@@ -170,6 +228,8 @@ export default function CheckoutPage() {
     console.log("✅ 訂單創建回應:", result);
 
     if (result.success) {
+      // 預留已在下單時轉為售出，不需再釋放
+      reservationRef.current = null;
      
       if (clearCart) {
         clearCart();
@@ -15,6 +15,7 @@ export default function MySeller({ onCartClick, cartCount = 0 }) {
   const [activeTab, setActiveTab] = useState("products");
   const [products, setProducts] = useState([]);
   const [orders, setOrders] = useState([]);
+  const [ordersCursor, setOrdersCursor] = useState(null);
   const [loading, setLoading] = useState(true);
   const [message, setMessage] = useState("");
 
@@ -43,14 +44,22 @@ export default function MySeller({ onCartClick, cartCount = 0 }) {
     }
   }, [isLoggedIn, user?.userId]);
 
-  const fetchSellerOrders = useCallback(async () => {
+  const fetchSellerOrders = useCallback(async (cursor = null) => {
     if (!isLoggedIn || !user?.userId) return;
     
     try {
-      setLoading(true);
-      const res = await api.get(`/api/orders/seller-orders?sellerId=${user.userId}`);
+      if (!cursor) setLoading(true);
+      const res = await api.get("/api/orders/seller-orders", {
+        params: cursor
+          ? { sellerId: user.userId, cursorCreatedAt: cursor.createdAt, cursorId: cursor.id }
+          : { sellerId: user.userId }
+      });
       if (res.data.success) {
-        setOrders(res.data.orders || []);
+        const page = res.data.orders || [];
+        setOrders(prev => cursor ? [...prev, ...page] : page);
+        setOrdersCursor(res.data.hasMore
+          ? { createdAt: res.data.nextCursorCreatedAt, id: res.data.nextCursorId }
+          : null);
       }
     } catch (error) {
       console.error("載入訂單失敗:", error);
@@ -312,6 +321,9 @@ export default function MySeller({ onCartClick, cartCount = 0 }) {
                     </div>
                   </div>
                 ))}
+                {ordersCursor && (
+                  <button className="my-seller-edit-btn" onClick={() => fetchSellerOrders(ordersCursor)} type="button">載入更多</button>
+                )}
               </div>
             )}
           </div>
@@ -17,6 +17,7 @@ export default function ProfilePage() {
   const [pwdMsg, setPwdMsg] = useState("");
   const [activeTab, setActiveTab] = useState("profile");
   const [favorites, setFavorites] = useState([]);
+  const [favoritesCursor, setFavoritesCursor] = useState(null);
   const [orders, setOrders] = useState([]);
   const [loading, setLoading] = useState(false);
 
@@ -24,12 +25,14 @@ export default function ProfilePage() {
     if (user) setForm({ username: user.username, email: user.email });
   }, [user]);
 
-  const loadFavorites = async () => {
+  const loadFavorites = async (cursor = null) => {
     try {
-    setLoading(true);
+    if (!cursor) setLoading(true);
     console.log('🔍 開始載入收藏...');
     
-    const response = await api.get("/api/favorites/my-favorites");
+    const response = await api.get("/api/favorites/my-favorites", {
+      params: cursor ? { cursorCreatedAt: cursor.createdAt, cursorId: cursor.id } : {}
+    });
     console.log('📡 收藏 API 回傳:', response.data);
     
     if (response.data.success) {
@@ -37,7 +40,10 @@ export default function ProfilePage() {
       console.log('📋 收藏資料:', favoritesData);
       console.log('📊 收藏數量:', favoritesData.length);
       
-      setFavorites(favoritesData);
+      setFavorites(prev => cursor ? [...prev, ...favoritesData] : favoritesData);
+      setFavoritesCursor(response.data.hasMore
+        ? { createdAt: response.data.nextCursorCreatedAt, id: response.data.nextCursorId }
+        : null);
       
       // 檢查每個收藏項目的圖片
       favoritesData.forEach((item, index) => {
@@ -277,6 +283,9 @@ export default function ProfilePage() {
             </div>
           </div>
         ))}
+        {favoritesCursor && (
+          <button className="profile-btn-outline" onClick={() => loadFavorites(favoritesCursor)} type="button">載入更多</button>
+        )}
       </div>
     )}
     <div className="profile-actions">
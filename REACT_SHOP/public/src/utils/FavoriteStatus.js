@@ -0,0 +1,48 @@
+import api from './api';
+
+// 同一輪渲染中各商品卡片的收藏狀態查詢合併成一次請求
+class FavoriteStatusLoader {
+  constructor() {
+    this.pending = new Map();
+    this.timer = null;
+  }
+
+  load(productId) {
+    if (this.pending.has(productId)) {
+      return this.pending.get(productId).promise;
+    }
+    let resolve;
+    let reject;
+    const promise = new Promise((res, rej) => {
+      resolve = res;
+      reject = rej;
+    });
+    this.pending.set(productId, { promise, resolve, reject });
+    if (!this.timer) {
+      this.timer = setTimeout(() => this.flush(), 0);
+    }
+    return promise;
+  }
+
+  async flush() {
+    const batch = this.pending;
+    this.pending = new Map();
+    this.timer = null;
+
+    const ids = [...batch.keys()];
+    for (let i = 0; i < ids.length; i += 200) {
+      const chunk = ids.slice(i, i + 200);
+      try {
+        const response = await api.get('/api/favorites/status', {
+          params: { productIds: chunk.join(',') },
+        });
+        const statuses = response.data.statuses || {};
+        chunk.forEach(id => batch.get(id).resolve(statuses[id] === true));
+      } catch (error) {
+        chunk.forEach(id => batch.get(id).reject(error));
+      }
+    }
+  }
+}
+
+export const favoriteStatus = new FavoriteStatusLoader();
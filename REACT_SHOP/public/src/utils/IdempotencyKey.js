@@ -0,0 +1,15 @@
+// 每次送出產生一個 Idempotency-Key；網路錯誤重送同樣內容時沿用，內容變了或已收到回應就換新的
+function newKey() {
+  if (window.crypto?.randomUUID) {
+    return window.crypto.randomUUID();
+  }
+  return `${Date.now().toString(36)}-${Math.random().toString(36).slice(2)}`;
+}
+
+export function idempotencyKey(ref, payload) {
+  const fingerprint = JSON.stringify(payload ?? null);
+  if (!ref.current || ref.current.fingerprint !== fingerprint) {
+    ref.current = { key: newKey(), fingerprint };
+  }
+  return ref.current.key;
+}
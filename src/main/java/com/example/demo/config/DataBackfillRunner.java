@@ -0,0 +1,51 @@
+package com.example.demo.config;
+
+import com.example.demo.repository.AuctionBidStateRepository;
+import com.example.demo.repository.OrderItemRepository;
+import com.example.demo.repository.ProductRepository;
+import com.example.demo.repository.SellerOrderStatRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+//啟動時補齊新增欄位的舊資料
+@Component
+public class DataBackfillRunner implements ApplicationRunner {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private SellerOrderStatRepository sellerOrderStatRepository;
+
+    @Autowired
+    private AuctionBidStateRepository auctionBidStateRepository;
+
+    @Override
+    @Transactional
+    public void run(ApplicationArguments args) {
+        int products = productRepository.backfillSkuAggregates();
+        if (products > 0) {
+            System.out.println("🔧 已補齊商品價格區間與總庫存: " + products + " 筆");
+        }
+        int orderItems = orderItemRepository.backfillSnapshots();
+        if (orderItems > 0) {
+            System.out.println("🔧 已補齊訂單項目商品快照: " + orderItems + " 筆");
+        }
+        if (sellerOrderStatRepository.count() == 0) {
+            int stats = sellerOrderStatRepository.rebuild();
+            if (stats > 0) {
+                System.out.println("🔧 已建立賣家訂單統計: " + stats + " 筆");
+            }
+        }
+        int auctions = auctionBidStateRepository.backfill();
+        if (auctions > 0) {
+            System.out.println("🔧 已建立競標最高出價紀錄: " + auctions + " 筆");
+        }
+    }
+}
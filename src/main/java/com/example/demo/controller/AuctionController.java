@@ -1,9 +1,11 @@
 package com.example.demo.controller;
 
+import com.example.demo.model.dto.BidCheck;
 import com.example.demo.model.dto.BidDTO;
 import com.example.demo.model.entity.User;
 import com.example.demo.repository.UserRepository;
 import com.example.demo.service.AuctionService;
+import com.example.demo.service.IdempotencyService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -11,6 +13,7 @@ import org.springframework.web.bind.annotation.*;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import java.math.BigDecimal;
+import java.util.HashMap;
 import java.util.Map;
 
 @RestController
@@ -23,6 +26,9 @@ public class AuctionController {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private IdempotencyService idempotencyService;
+    
    
     @GetMapping("/{productId}")
     public ResponseEntity<?> getAuctionInfo(@PathVariable Long productId) {
@@ -47,6 +53,7 @@ public class AuctionController {
     @PostMapping("/{productId}/bid")
     public ResponseEntity<?> placeBid(@PathVariable Long productId, 
                                      @RequestBody Map<String, Object> bidData,
+                                     @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
                                      HttpServletRequest request) {
         try {
             //session驗證登入狀態
@@ -61,13 +68,16 @@ public class AuctionController {
                 return ResponseEntity.status(401).body(Map.of("error", "請先登入"));
             }
             
-            //用戶資訊
-            User user = userRepository.findById(userId).orElse(null);
-            if (user == null) {
-                return ResponseEntity.status(401).body(Map.of("error", "用戶不存在"));
+            //用戶名稱登入時已存在 session，舊的 session 才查一次資料庫
+            String username = (String) session.getAttribute("username");
+            if (username == null) {
+                User user = userRepository.findById(userId).orElse(null);
+                if (user == null) {
+                    return ResponseEntity.status(401).body(Map.of("error", "用戶不存在"));
+                }
+                username = user.getUsername();
+                session.setAttribute("username", username);
             }
-            
-            String username = user.getUsername();
             System.out.println("💰 用戶出價: " + username + "，商品ID: " + productId);
             
            
@@ -93,16 +103,27 @@ public class AuctionController {
                 return ResponseEntity.badRequest().body(Map.of("error", "出價金額格式錯誤"));
             }
             
-           
-            BidDTO result = auctionService.placeBid(productId, username, amount);
+            final BigDecimal bidAmount = amount;
+            final String bidderName = username;
+            //先以競標簿預先檢查，明顯會失敗的出價不進出價通道也不保存冪等紀錄
+            //被拒絕時若同一個 Idempotency-Key 的請求執行中或已完成就回傳第一次的結果，否則直接回 400
+            BidCheck check = auctionService.precheckBid(productId, userId, bidAmount);
+            if (!check.isAccepted()) {
+                ResponseEntity<?> replayed = idempotencyService.replayExisting(idempotencyKey, userId, "bid:" + productId);
+                return replayed != null ? replayed : ResponseEntity.badRequest().body(Map.of("error", check.getMessage()));
+            }
             
-            System.out.println("✅ 出價成功: " + username + " 出價 NT$ " + amount);
-            return ResponseEntity.ok(Map.of(
-                "message", "出價成功",
-                "bidData", result,
-                "newPrice", amount,
-                "bidder", username
-            ));
+            return idempotencyService.execute(idempotencyKey, userId, "bid:" + productId, () -> {
+                BidDTO result = auctionService.placeBid(productId, userId, bidderName, bidAmount);
+                
+                System.out.println("✅ 出價成功: " + bidderName + " 出價 NT$ " + bidAmount);
+                return ResponseEntity.ok(Map.of(
+                    "message", "出價成功",
+                    "bidData", result,
+                    "newPrice", bidAmount,
+                    "bidder", bidderName
+                ));
+            });
             
         } catch (IllegalStateException e) {
             System.err.println("❌ 出價狀態錯誤: " + e.getMessage());
@@ -119,7 +140,9 @@ public class AuctionController {
     
    
     @PostMapping("/{productId}/buy-now")
-    public ResponseEntity<?> buyNow(@PathVariable Long productId, HttpServletRequest request) {
+    public ResponseEntity<?> buyNow(@PathVariable Long productId,
+                                    @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                    HttpServletRequest request) {
         try {
             
             HttpSession session = request.getSession(false);
@@ -141,10 +164,12 @@ public class AuctionController {
             System.out.println("💳 用戶直購: " + username + "，商品ID: " + productId);
             
            
-            Map<String, Object> result = auctionService.buyNow(productId, username);
-            
-            System.out.println("✅ 直購成功: " + username);
-            return ResponseEntity.ok(result);
+            return idempotencyService.execute(idempotencyKey, userId, "buy-now:" + productId, () -> {
+                Map<String, Object> result = auctionService.buyNow(productId, username);
+                
+                System.out.println("✅ 直購成功: " + username);
+                return ResponseEntity.ok(result);
+            });
             
         } catch (IllegalStateException e) {
             System.err.println("❌ 直購狀態錯誤: " + e.getMessage());
@@ -161,7 +186,11 @@ public class AuctionController {
     
     
     @GetMapping("/my-bids")
-    public ResponseEntity<?> getMyBids(HttpServletRequest request) {
+    public ResponseEntity<?> getMyBids(
+            @RequestParam(defaultValue = "false") boolean latestOnly,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "20") int size,
+            HttpServletRequest request) {
         try {
             HttpSession session = request.getSession(false);
             if (session == null) {
@@ -173,17 +202,10 @@ public class AuctionController {
                 return ResponseEntity.status(401).body(Map.of("error", "請先登入"));
             }
             
-            User user = userRepository.findById(userId).orElse(null);
-            if (user == null) {
-                return ResponseEntity.status(401).body(Map.of("error", "用戶不存在"));
-            }
-            
-            var bidHistory = auctionService.getUserBids(user.getUsername());
-            
-            return ResponseEntity.ok(Map.of(
-                "bids", bidHistory,
-                "success", true
-            ));
+            Map<String, Object> response = new HashMap<>(
+                auctionService.getUserBids(userId, latestOnly, cursorId, size));
+            response.put("success", true);
+            return ResponseEntity.ok(response);
             
         } catch (Exception e) {
             System.err.println("❌ 獲取競標記錄失敗: " + e.getMessage());
@@ -167,6 +167,7 @@ public class AuthController {
             
             if (user != null) {
                 session.setAttribute("userId", user.getUserId());
+                session.setAttribute("username", user.getUsername());
                 
                 System.out.println("登入成功 - 用戶ID: " + user.getUserId() + 
                                  ", Session ID: " + session.getId() + 
@@ -1,12 +1,14 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.dto.AddToCartDTO;
+import com.example.demo.model.dto.CartDeltaDTO;
 import com.example.demo.model.dto.CartResponseDTO;
 import com.example.demo.service.CartService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import jakarta.servlet.http.HttpSession;
+import java.util.HashMap;
 import java.util.Map;
 
 @RestController
@@ -70,11 +72,8 @@ public class CartController {
         }
         
         try {
-            CartResponseDTO cart = cartService.addToCart(userId, dto);
-            return ResponseEntity.ok(Map.of(
-                "items", cart.getItems(),
-                "message", "商品已加入購物車"
-            ));
+            CartDeltaDTO delta = cartService.addToCart(userId, dto);
+            return ResponseEntity.ok(toBody(delta, "商品已加入購物車"));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
@@ -93,8 +92,8 @@ public class CartController {
         }
         
         try {
-            CartResponseDTO cart = cartService.updateCartItem(userId, cartItemId, quantity);
-            return ResponseEntity.ok(Map.of("items", cart.getItems()));
+            CartDeltaDTO delta = cartService.updateCartItem(userId, cartItemId, quantity);
+            return ResponseEntity.ok(toBody(delta, null));
         } catch (Exception e) {
             System.err.println("更新購物車失敗: " + e.getMessage());
             return ResponseEntity.status(500).body(Map.of("error", "更新失敗"));
@@ -109,11 +108,24 @@ public class CartController {
         }
         
         try {
-            cartService.removeCartItem(userId, cartItemId);
-            return ResponseEntity.ok(Map.of("message", "商品已移除"));
+            CartDeltaDTO delta = cartService.removeCartItem(userId, cartItemId);
+            return ResponseEntity.ok(toBody(delta, "商品已移除"));
         } catch (Exception e) {
             System.err.println("移除商品失敗: " + e.getMessage());
             return ResponseEntity.status(500).body(Map.of("error", "移除失敗"));
         }
     }
+
+    //異動只回傳變動的項目與新的總計
+    private Map<String, Object> toBody(CartDeltaDTO delta, String message) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("item", delta.getItem());
+        body.put("removedCartItemId", delta.getRemovedCartItemId());
+        body.put("totalAmount", delta.getTotalAmount());
+        body.put("totalQuantity", delta.getTotalQuantity());
+        if (message != null) {
+            body.put("message", message);
+        }
+        return body;
+    }
 }
@@ -0,0 +1,41 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.dto.ProductPageDTO;
+import com.example.demo.service.ProductService;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/categories")
+@RequiredArgsConstructor
+public class CategoryController {
+    private final ProductService productService;
+
+    //分類列表與各分類、商品狀況的上架數量
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getCategories() {
+        return ResponseEntity.ok(productService.getCategoryTree());
+    }
+
+    //分類商品分頁（游標為上一頁最後一筆的 createdAt / productId）
+    @GetMapping("/{category}/products")
+    public ResponseEntity<ProductPageDTO> getCategoryProducts(
+            @PathVariable String category,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorCreatedAt,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            ProductPageDTO page = productService.getCategoryProductPage(category, cursorCreatedAt, cursorId, size);
+            return ResponseEntity.ok(page);
+        } catch (Exception e) {
+            System.err.println("❌ 查詢分類商品分頁失敗: " + e.getMessage());
+            return ResponseEntity.status(500).build();
+        }
+    }
+}
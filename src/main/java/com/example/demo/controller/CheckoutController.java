@@ -0,0 +1,61 @@
+package com.example.demo.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import com.example.demo.model.dto.OrderCreateDTO;
+import com.example.demo.service.InventoryReservationService;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+
+@RestController
+@RequestMapping("/api/checkout")
+public class CheckoutController {
+
+    @Autowired
+    private InventoryReservationService inventoryReservationService;
+
+    //進入結帳頁時預留庫存，下單時帶上 reservationId
+    @PostMapping("/reservations")
+    public ResponseEntity<?> reserve(@RequestBody OrderCreateDTO checkoutData, HttpServletRequest httpRequest) {
+        Long userId = getSessionUserId(httpRequest);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("message", "請先登入", "success", false));
+        }
+        try {
+            InventoryReservationService.Reservation reservation =
+                inventoryReservationService.reserve(userId, checkoutData.getOrderItems());
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "reservationId", reservation.getId(),
+                "expiresAt", reservation.getExpiresAt()
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("message", e.getMessage(), "success", false));
+        }
+    }
+
+    //離開結帳頁時釋放
+    @DeleteMapping("/reservations/{reservationId}")
+    public ResponseEntity<?> release(@PathVariable String reservationId, HttpServletRequest httpRequest) {
+        Long userId = getSessionUserId(httpRequest);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("message", "請先登入", "success", false));
+        }
+        boolean released = inventoryReservationService.releaseForUser(reservationId, userId);
+        return ResponseEntity.ok(Map.of("success", released));
+    }
+
+    private Long getSessionUserId(HttpServletRequest httpRequest) {
+        HttpSession session = httpRequest.getSession(false);
+        return session != null ? (Long) session.getAttribute("userId") : null;
+    }
+}
@@ -1,21 +1,25 @@
 package com.example.demo.controller;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.Objects;
-import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import com.example.demo.model.dto.FavoriteRowDTO;
 import com.example.demo.model.entity.Favorite;
 import com.example.demo.model.entity.Product;
 import com.example.demo.repository.FavoriteRepository;
 import com.example.demo.repository.ProductRepository;
+import com.example.demo.service.FavoriteIndex;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
@@ -29,6 +33,13 @@ public class FavoritesController {
     
     @Autowired
     private ProductRepository productRepository;
+    
+    @Autowired
+    private FavoriteIndex favoriteIndex;
+
+    private static final int MAX_STATUS_IDS = 200;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final LocalDateTime CURSOR_START = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
 
     @PostMapping("/{productId}")
     public ResponseEntity<?> addFavorite(
@@ -58,7 +69,7 @@ public class FavoritesController {
                     .body(Map.of("message", "不能收藏自己的商品", "success", false));
             }
             
-            if (favoriteRepository.existsByUserIdAndProduct(userId, product)) {
+            if (favoriteIndex.isFavorited(userId, productId)) {
                 return ResponseEntity.badRequest()
                     .body(Map.of("message", "商品已在收藏列表中", "success", false));
             }
@@ -68,6 +79,7 @@ public class FavoritesController {
             favorite.setUserId(userId);
             favorite.setProduct(product);
             favoriteRepository.save(favorite);
+            favoriteIndex.added(userId, productId);
             
             System.out.println("✅ 收藏成功：用戶 " + userId + " 收藏商品 " + productId);
             
@@ -110,6 +122,7 @@ public class FavoritesController {
             
             
             favoriteRepository.deleteByUserIdAndProduct(userId, product);
+            favoriteIndex.removed(userId, productId);
             
             return ResponseEntity.ok(Map.of(
                 "message", "已移除收藏",
@@ -126,7 +139,11 @@ public class FavoritesController {
     }
 
     @GetMapping("/my-favorites")
-    public ResponseEntity<?> getMyFavorites(HttpServletRequest httpRequest) {
+    public ResponseEntity<?> getMyFavorites(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorCreatedAt,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "20") int size,
+            HttpServletRequest httpRequest) {
         try {
             HttpSession session = httpRequest.getSession(false);
             if (session == null) {
@@ -140,42 +157,44 @@ public class FavoritesController {
                     .body(Map.of("message", "請先登入", "success", false));
             }
             
-            System.out.println("🔍 開始查詢用戶 " + userId + " 的收藏");
-            
-            List<Favorite> favorites = favoriteRepository.findByUserIdWithProductOrderByCreatedAtDesc(userId);
-            System.out.println("📊 查詢到 " + favorites.size() + " 個收藏");
-            
-            List<Map<String, Object>> favoriteProducts = favorites.stream()
-                .filter(favorite -> favorite.getProduct() != null)
-                .map(favorite -> {
-                    Product product = favorite.getProduct();
-                    System.out.println("📦 處理商品: " + product.getName());
-                    System.out.println("📸 商品圖片: " + product.getMainImageUrl());
-                    
-                    Map<String, Object> favoriteMap = new HashMap<>();
-                    favoriteMap.put("favoriteId", favorite.getFavoriteId());
-                    favoriteMap.put("productId", product.getProductId());
-                    favoriteMap.put("productName", product.getName());
-                    favoriteMap.put("productImage", product.getMainImageUrl());
-                    
-                    BigDecimal price = product.getCurrentPrice();
-                    if (price == null || price.compareTo(BigDecimal.ZERO) == 0) {
-                        price = product.getStartPrice();
-                    }
-                    favoriteMap.put("price", price != null ? price : BigDecimal.ZERO);
-                    favoriteMap.put("createdAt", favorite.getCreatedAt());
-                    
-                    System.out.println("✅ 商品處理完成: " + favoriteMap);
-                    return favoriteMap;
-                })
-                .collect(Collectors.toList());
+            int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+            List<FavoriteRowDTO> rows = favoriteRepository.findFavoriteRowsPage(userId,
+                cursorCreatedAt != null ? cursorCreatedAt : CURSOR_START,
+                cursorId != null ? cursorId : Long.MAX_VALUE,
+                PageRequest.of(0, pageSize + 1));
             
-            System.out.println("📋 最終回傳 " + favoriteProducts.size() + " 個收藏商品");
+            boolean hasMore = rows.size() > pageSize;
+            if (hasMore) {
+                rows = rows.subList(0, pageSize);
+            }
             
-            return ResponseEntity.ok(Map.of(
-                "favorites", favoriteProducts,
-                "success", true
-            ));
+            List<Map<String, Object>> favoriteProducts = new ArrayList<>();
+            for (FavoriteRowDTO row : rows) {
+                Map<String, Object> favoriteMap = new HashMap<>();
+                favoriteMap.put("favoriteId", row.getFavoriteId());
+                favoriteMap.put("productId", row.getProductId());
+                favoriteMap.put("productName", row.getProductName());
+                favoriteMap.put("productImage", row.getProductImage());
+                
+                BigDecimal price = row.getCurrentPrice();
+                if (price == null || price.compareTo(BigDecimal.ZERO) == 0) {
+                    price = row.getStartPrice();
+                }
+                favoriteMap.put("price", price != null ? price : BigDecimal.ZERO);
+                favoriteMap.put("createdAt", row.getCreatedAt());
+                favoriteProducts.add(favoriteMap);
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("favorites", favoriteProducts);
+            response.put("success", true);
+            response.put("hasMore", hasMore);
+            if (hasMore) {
+                FavoriteRowDTO last = rows.get(rows.size() - 1);
+                response.put("nextCursorCreatedAt", last.getCreatedAt());
+                response.put("nextCursorId", last.getFavoriteId());
+            }
+            return ResponseEntity.ok(response);
             
         } catch (Exception e) {
             System.err.println("❌ 獲取收藏失敗: " + e.getMessage());
@@ -200,8 +219,7 @@ public class FavoritesController {
                 return ResponseEntity.ok(Map.of("isFavorited", false, "success", true));
             }
             
-            Product product = productRepository.findById(productId).orElse(null);
-            boolean isFavorited = product != null && favoriteRepository.existsByUserIdAndProduct(userId, product);
+            boolean isFavorited = favoriteIndex.isFavorited(userId, productId);
             
             return ResponseEntity.ok(Map.of("isFavorited", isFavorited, "success", true));
             
@@ -211,4 +229,38 @@ public class FavoritesController {
                 .body(Map.of("message", "系統錯誤", "success", false));
         }
     }
+
+    //商品列表一次查詢多個商品的收藏狀態：?productIds=1,2,3
+    @GetMapping("/status")
+    public ResponseEntity<?> getFavoriteStatuses(
+            @RequestParam List<Long> productIds,
+            HttpServletRequest httpRequest) {
+        if (productIds.size() > MAX_STATUS_IDS) {
+            return ResponseEntity.badRequest()
+                .body(Map.of("message", "一次最多查詢 " + MAX_STATUS_IDS + " 個商品", "success", false));
+        }
+        try {
+            HttpSession session = httpRequest.getSession(false);
+            Long userId = session != null ? (Long) session.getAttribute("userId") : null;
+            
+            Map<Long, Boolean> statuses;
+            if (userId == null) {
+                statuses = new HashMap<>();
+                for (Long productId : productIds) {
+                    if (productId != null) {
+                        statuses.put(productId, false);
+                    }
+                }
+            } else {
+                statuses = favoriteIndex.statuses(userId, productIds);
+            }
+            
+            return ResponseEntity.ok(Map.of("statuses", statuses, "success", true));
+            
+        } catch (Exception e) {
+            System.err.println("❌ 檢查收藏狀態失敗: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("message", "系統錯誤", "success", false));
+        }
+    }
 }
@@ -1,25 +1,25 @@
 package com.example.demo.controller;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import com.example.demo.service.IdempotencyService;
 import com.example.demo.service.OrderService;
 import com.example.demo.model.dto.OrderCreateDTO;
+import com.example.demo.model.dto.SellerOrderPageDTO;
 import com.example.demo.model.entity.Order;
-import com.example.demo.model.entity.OrderItem; 
-import com.example.demo.model.entity.Product;   
-import com.example.demo.model.entity.User; 
+import com.example.demo.model.entity.SellerOrderStat;
 import com.example.demo.repository.OrderRepository;
 import com.example.demo.repository.OrderItemRepository; 
-import com.example.demo.repository.ProductRepository;   
-import com.example.demo.repository.UserRepository;    
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
@@ -32,20 +32,18 @@ public class OrderController {
     private OrderService orderService;
     
     @Autowired
-    private OrderRepository orderRepository;  
+    private IdempotencyService idempotencyService;
     
     @Autowired
-    private OrderItemRepository orderItemRepository;
-    
-    @Autowired
-    private ProductRepository productRepository;
+    private OrderRepository orderRepository;  
     
     @Autowired
-    private UserRepository userRepository;
+    private OrderItemRepository orderItemRepository;
     
     @PostMapping("")
     public ResponseEntity<?> createOrder(
             @RequestBody OrderCreateDTO orderData,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             HttpServletRequest httpRequest) {
         try {
             HttpSession session = httpRequest.getSession(false);
@@ -61,20 +59,23 @@ public class OrderController {
             }
             
             orderData.setUserId(userId);
-            Order order = orderService.createOrder(orderData);
-            
-            if (order != null) {
-                return ResponseEntity.ok(Map.of(
-                    "message", "訂單創建成功",
-                    "success", true,
-                    "orderId", order.getOrderId(),
-                    "orderNumber", "ORD" + String.format("%08d", order.getOrderId()),
-                    "totalAmount", order.getTotalPrice()
-                ));
-            } else {
-                return ResponseEntity.badRequest()
-                    .body(Map.of("message", "訂單創建失敗", "success", false));
-            }
+            //重複送出（同一個 Idempotency-Key）直接回傳第一次的結果
+            return idempotencyService.execute(idempotencyKey, userId, "order", () -> {
+                Order order = orderService.createOrder(orderData);
+                
+                if (order != null) {
+                    return ResponseEntity.ok(Map.of(
+                        "message", "訂單創建成功",
+                        "success", true,
+                        "orderId", order.getOrderId(),
+                        "orderNumber", "ORD" + String.format("%08d", order.getOrderId()),
+                        "totalAmount", order.getTotalPrice()
+                    ));
+                } else {
+                    return ResponseEntity.badRequest()
+                        .body(Map.of("message", "訂單創建失敗", "success", false));
+                }
+            });
             
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest()
@@ -92,6 +93,9 @@ public class OrderController {
     public ResponseEntity<?> getSellerOrders(
             @RequestParam Long sellerId,
             @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorCreatedAt,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "20") int size,
             HttpServletRequest httpRequest) {
         try {
             HttpSession session = httpRequest.getSession(false);
@@ -106,69 +110,17 @@ public class OrderController {
                     .body(Map.of("message", "無權限查看", "success", false));
             }
             
-            // 根據是否有狀態參數決定查詢方式
-            List<Order> sellerOrders;
-            if (status != null && !status.trim().isEmpty()) {
-                sellerOrders = orderRepository.findSellerOrdersByStatus(sellerId, status);
-            } else {
-                sellerOrders = orderRepository.findSellerOrders(sellerId);
-            }
-            
-            List<Map<String, Object>> ordersWithItems = sellerOrders.stream()
-                .map(order -> {
-                    List<OrderItem> orderItems = orderItemRepository.findByOrderId(order.getOrderId());
-                    User buyer = userRepository.findById(order.getUserId()).orElse(null);
-                    
-                    
-                    List<Map<String, Object>> itemDetails = orderItems.stream()
-                        .filter(item -> {
-                            Product product = productRepository.findById(item.getProductId()).orElse(null);
-                            return product != null && product.getSellerId().equals(sellerId);
-                        })
-                        .map(item -> {
-                            Product product = productRepository.findById(item.getProductId()).orElse(null);
-                            
-                            Map<String, Object> itemMap = new HashMap<>();
-                            itemMap.put("productId", item.getProductId());
-                            itemMap.put("productName", product != null ? product.getName() : "未知商品");
-                            
-                           
-                            String imageUrl = product != null ? product.getMainImageUrl() : null;
-                            if (imageUrl != null && !imageUrl.startsWith("/")) {
-                                imageUrl = "/uploads/" + imageUrl;
-                            }
-                            itemMap.put("productImage", imageUrl);
-                            itemMap.put("quantity", item.getQuantity());
-                            itemMap.put("price", item.getPrice());
-                            
-                            return itemMap;
-                        })
-                        .collect(Collectors.toList());
-                    
-                    // 只有當訂單中包含賣家商品時才返回
-                    if (!itemDetails.isEmpty()) {
-                        Map<String, Object> orderMap = new HashMap<>();
-                        orderMap.put("orderId", order.getOrderId());
-                        orderMap.put("createdAt", order.getCreatedAt());
-                        orderMap.put("status", order.getStatus());
-                        orderMap.put("totalPrice", order.getTotalPrice());
-                        orderMap.put("buyerName", buyer != null ? buyer.getUsername() : "未知買家");
-                        orderMap.put("buyerPhone", order.getReceiverPhone());
-                        orderMap.put("buyerAddress", order.getReceiverAddress());
-                        orderMap.put("orderItems", itemDetails);
-                        
-                        return orderMap;
-                    }
-                    return null;
-                })
-                .filter(orderMap -> orderMap != null)
-                .collect(Collectors.toList());
+            SellerOrderPageDTO page = orderService.getSellerOrderPage(
+                sellerId, status, cursorCreatedAt, cursorId, size);
             
-            return ResponseEntity.ok(Map.of(
-                "orders", ordersWithItems,
-                "success", true,
-                "totalCount", ordersWithItems.size()
-            ));
+            Map<String, Object> response = new HashMap<>();
+            response.put("orders", page.getOrders());
+            response.put("success", true);
+            response.put("totalCount", page.getOrders().size());
+            response.put("hasMore", page.isHasMore());
+            response.put("nextCursorCreatedAt", page.getNextCursorCreatedAt());
+            response.put("nextCursorId", page.getNextCursorId());
+            return ResponseEntity.ok(response);
             
         } catch (Exception e) {
             System.err.println("❌ 獲取賣家訂單失敗: " + e.getMessage());
@@ -195,17 +147,18 @@ public class OrderController {
                     .body(Map.of("message", "無權限查看", "success", false));
             }
             
-            List<Object[]> statistics = orderRepository.countSellerOrdersByStatus(sellerId);
-            
             Map<String, Long> statusCounts = new HashMap<>();
-            for (Object[] stat : statistics) {
-                String status = (String) stat[0];
-                Long count = (Long) stat[1];
-                statusCounts.put(status, count);
+            Map<String, BigDecimal> revenue = new HashMap<>();
+            for (SellerOrderStat stat : orderService.getSellerOrderStats(sellerId)) {
+                if (stat.getOrderCount() > 0) {
+                    statusCounts.put(stat.getStatus(), stat.getOrderCount());
+                    revenue.put(stat.getStatus(), stat.getRevenue());
+                }
             }
             
             return ResponseEntity.ok(Map.of(
                 "statistics", statusCounts,
+                "revenue", revenue,
                 "success", true
             ));
             
@@ -246,26 +199,24 @@ public class OrderController {
                     .body(Map.of("message", "訂單不存在", "success", false));
             }
             
-            // 驗證是否為賣家的商品訂單
-            List<OrderItem> orderItems = orderItemRepository.findByOrderId(orderId);
-            boolean isSeller = orderItems.stream().anyMatch(item -> {
-                Product product = productRepository.findById(item.getProductId()).orElse(null);
-                return product != null && product.getSellerId().equals(userId);
-            });
+            // 驗證是否為賣家的商品訂單（訂單項目上記錄了賣家）
+            boolean isSeller = orderItemRepository.existsByOrderIdAndSellerId(orderId, userId);
             
             if (!isSeller) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(Map.of("message", "無權限操作此訂單", "success", false));
             }
             
-            order.setStatus(newStatus);
-            orderRepository.save(order);
+            orderService.updateOrderStatus(orderId, newStatus);
             
             return ResponseEntity.ok(Map.of(
                 "message", "訂單狀態更新成功",
                 "success", true
             ));
             
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("message", e.getMessage(), "success", false));
         } catch (Exception e) {
             System.err.println("❌ 更新訂單狀態失敗: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -290,57 +241,7 @@ public class OrderController {
                     .body(Map.of("message", "請先登入", "success", false));
             }
             
-            List<Order> orders = orderService.getOrdersByUserId(userId);
-            
-           
-            List<Map<String, Object>> ordersWithItems = orders.stream()
-                .map(order -> {
-                    List<OrderItem> orderItems = orderItemRepository.findByOrderId(order.getOrderId());
-                    
-                    //組裝商品詳情
-                    List<Map<String, Object>> itemDetails = orderItems.stream()
-                        .map(item -> {
-                            Product product = productRepository.findById(item.getProductId()).orElse(null);
-                            User seller = null;
-                            if (product != null) {
-                                seller = userRepository.findById(product.getSellerId()).orElse(null);
-                            }
-                            
-                            
-                            Map<String, Object> itemMap = new HashMap<>();
-                            itemMap.put("productId", item.getProductId());
-                            itemMap.put("productName", product != null ? product.getName() : "未知商品");
-                            String imageUrl = product != null ? product.getMainImageUrl() : null;
-                            if (imageUrl != null && (imageUrl.equals("/uploads/default.png") || 
-                                    imageUrl.equals("default.png") || 
-                                    imageUrl.contains("default.png"))) {
-                imageUrl = null; 
-            } else if (imageUrl != null && !imageUrl.startsWith("/")) {
-                imageUrl = "/uploads/" + imageUrl;
-            }
-            itemMap.put("productImage", imageUrl);
-                            itemMap.put("productImage", imageUrl);
-                            itemMap.put("productImage", imageUrl);
-                            itemMap.put("quantity", item.getQuantity());
-                            itemMap.put("price", item.getPrice());
-                            itemMap.put("sellerName", seller != null ? seller.getUsername() : "未知賣家");
-                            itemMap.put("sellerId", product != null ? product.getSellerId() : null);
-                            
-                            return itemMap;
-                        })
-                        .collect(Collectors.toList());
-                    
-                 
-                    Map<String, Object> orderMap = new HashMap<>();
-                    orderMap.put("orderId", order.getOrderId());
-                    orderMap.put("createdAt", order.getCreatedAt());
-                    orderMap.put("status", order.getStatus());
-                    orderMap.put("totalPrice", order.getTotalPrice());
-                    orderMap.put("orderItems", itemDetails);
-                    
-                    return orderMap;
-                })
-                .collect(Collectors.toList());
+            List<Map<String, Object>> ordersWithItems = orderService.getBuyerOrders(userId);
             
             return ResponseEntity.ok(Map.of(
                 "orders", ordersWithItems,
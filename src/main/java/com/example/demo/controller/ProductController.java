@@ -2,10 +2,12 @@ package com.example.demo.controller;
 
 import com.example.demo.model.dto.ProductCreateDTO;
 import com.example.demo.model.dto.ProductDTO;
+import com.example.demo.model.dto.ProductPageDTO;
 import com.example.demo.model.entity.Product;
 import com.example.demo.service.ProductService;
 import com.example.demo.service.ProductSkuService;
 
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.transaction.annotation.Transactional;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -14,6 +16,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -48,6 +51,35 @@ public class ProductController {
         }
     }
 
+    //上架商品分頁（游標為上一頁最後一筆的 createdAt / productId）
+    @GetMapping("/page")
+    public ResponseEntity<ProductPageDTO> getActiveProductPage(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorCreatedAt,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            ProductPageDTO page = productService.getActiveProductPage(cursorCreatedAt, cursorId, size);
+            return ResponseEntity.ok(page);
+        } catch (Exception e) {
+            System.err.println("❌ 查詢商品分頁失敗: " + e.getMessage());
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    //關鍵字搜尋（依關聯度排序）
+    @GetMapping("/search")
+    public ResponseEntity<List<ProductDTO>> searchProducts(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            List<ProductDTO> products = productService.searchActiveProducts(keyword, limit);
+            return ResponseEntity.ok(products);
+        } catch (Exception e) {
+            System.err.println("❌ 搜尋商品失敗: " + e.getMessage());
+            return ResponseEntity.status(500).build();
+        }
+    }
+
     @GetMapping("/my")
     public ResponseEntity<List<ProductDTO>> getMyProducts(@RequestParam Long userId) {
         try {
@@ -2,6 +2,8 @@ package com.example.demo.controller;
 
 import com.example.demo.model.entity.User;
 import com.example.demo.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -48,7 +50,8 @@ public class UserController {
 
     // 更新用戶名
     @PutMapping("/me")
-    public ResponseEntity<?> updateCurrentUser(Authentication auth, @RequestBody Map<String, String> updateData) {
+    public ResponseEntity<?> updateCurrentUser(Authentication auth, @RequestBody Map<String, String> updateData,
+                                               HttpServletRequest request) {
         if (auth == null || !auth.isAuthenticated()) {
             return ResponseEntity.status(401).body(Map.of("error", "未登入", "message", "請先登入"));
         }
@@ -59,6 +62,11 @@ public class UserController {
         }
         User updatedUser = userService.updateUsername(username, newUsername);
         if (updatedUser != null) {
+            // 出價時直接使用 session 中的用戶名稱
+            HttpSession session = request.getSession(false);
+            if (session != null) {
+                session.setAttribute("username", updatedUser.getUsername());
+            }
             return ResponseEntity.ok(Map.of(
                     "userId", updatedUser.getUserId(),
                     "username", updatedUser.getUsername(),
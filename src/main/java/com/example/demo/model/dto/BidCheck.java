@@ -0,0 +1,63 @@
+package com.example.demo.model.dto;
+
+import java.math.BigDecimal;
+
+//出價預先檢查結果：不通過時記錄原因，訊息在需要回應時才組成
+public class BidCheck {
+
+    public enum Reason {
+        ACCEPTED,
+        NOT_FOUND,
+        NOT_AUCTION,
+        ENDED,
+        NOT_OPEN,
+        SELF_BID,
+        TOO_LOW,
+        AT_BUY_NOW,
+        ALREADY_HIGHEST
+    }
+
+    public static final BidCheck ACCEPTED = new BidCheck(Reason.ACCEPTED, null);
+
+    private final Reason reason;
+    private final BigDecimal limit;    // TOO_LOW：最低出價；AT_BUY_NOW：直購價
+
+    private BidCheck(Reason reason, BigDecimal limit) {
+        this.reason = reason;
+        this.limit = limit;
+    }
+
+    public static BidCheck reject(Reason reason) {
+        return new BidCheck(reason, null);
+    }
+
+    public static BidCheck reject(Reason reason, BigDecimal limit) {
+        return new BidCheck(reason, limit);
+    }
+
+    public boolean isAccepted() {
+        return reason == Reason.ACCEPTED;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public BigDecimal getLimit() {
+        return limit;
+    }
+
+    public String getMessage() {
+        switch (reason) {
+            case NOT_FOUND: return "商品不存在";
+            case NOT_AUCTION: return "此商品非競標商品";
+            case ENDED: return "競標已結束";
+            case NOT_OPEN: return "商品狀態不允許競標";
+            case SELF_BID: return "賣家不能對自己的商品出價";
+            case TOO_LOW: return String.format("出價必須至少為 NT$ %,d", limit.intValue());
+            case AT_BUY_NOW: return String.format("出價不能等於或超過直購價 NT$ %,d，請使用直購功能", limit.intValue());
+            case ALREADY_HIGHEST: return "您已經是目前最高出價者";
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.demo.model.dto;
+
+import lombok.Data;
+
+//購物車異動結果：只回傳變動的項目與新的總計，前端不需重新載入整個購物車
+@Data
+public class CartDeltaDTO {
+    private CartItemDTO item;            // 新增或更新後的項目（被移除時為 null）
+    private Long removedCartItemId;      // 被移除的項目 ID
+    private Double totalAmount;
+    private Integer totalQuantity;
+}
@@ -0,0 +1,22 @@
+package com.example.demo.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+//收藏列表的單列結果（只取列表顯示需要的商品欄位）
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FavoriteRowDTO {
+    private Long favoriteId;
+    private Long productId;
+    private String productName;
+    private String productImage;
+    private BigDecimal currentPrice;
+    private BigDecimal startPrice;
+    private LocalDateTime createdAt;
+}
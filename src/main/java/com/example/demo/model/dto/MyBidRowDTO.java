@@ -0,0 +1,39 @@
+package com.example.demo.model.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+//我的出價紀錄的單列結果（出價 + 商品名稱/結束時間 + 該商品目前最高價）
+@Data
+@NoArgsConstructor
+public class MyBidRowDTO {
+    private Long bidId;
+    private Long productId;
+    private String productName;
+    private BigDecimal amount;
+    private LocalDateTime bidTime;
+    private LocalDateTime bidEndTime;
+    private BigDecimal highestAmount;
+    // 只在「每個競標最新一筆」模式提供：自己在該商品的出價次數
+    private Long myBidCount;
+
+    public MyBidRowDTO(Long bidId, Long productId, String productName, BigDecimal amount,
+                       LocalDateTime bidTime, LocalDateTime bidEndTime, BigDecimal highestAmount) {
+        this.bidId = bidId;
+        this.productId = productId;
+        this.productName = productName;
+        this.amount = amount;
+        this.bidTime = bidTime;
+        this.bidEndTime = bidEndTime;
+        this.highestAmount = highestAmount;
+    }
+
+    public MyBidRowDTO(Long bidId, Long productId, String productName, BigDecimal amount,
+                       LocalDateTime bidTime, LocalDateTime bidEndTime, BigDecimal highestAmount, Long myBidCount) {
+        this(bidId, productId, productName, amount, bidTime, bidEndTime, highestAmount);
+        this.myBidCount = myBidCount;
+    }
+}
@@ -8,6 +8,7 @@ public class OrderCreateDTO {
     private List<OrderItemDTO> orderItems;
     private BigDecimal totalAmount;
     private ShippingInfoDTO shippingInfo;
+    private String reservationId;
     
     public static class ShippingInfoDTO {
         private String name;
@@ -46,6 +47,9 @@ public class OrderCreateDTO {
     public ShippingInfoDTO getShippingInfo() { return shippingInfo; }
     public void setShippingInfo(ShippingInfoDTO shippingInfo) { this.shippingInfo = shippingInfo; }
     
+    public String getReservationId() { return reservationId; }
+    public void setReservationId(String reservationId) { this.reservationId = reservationId; }
+    
     public boolean isValid() {
         return userId != null && 
                orderItems != null && !orderItems.isEmpty() && 
@@ -37,6 +37,29 @@ public class ProductDTO {
     
     public ProductDTO() {}
 
+    //複本（SKU 與圖片一併複製），快取回傳用
+    public ProductDTO copy() {
+        ProductDTO copy = new ProductDTO(id, sellerId, name, category, description, startPrice, currentPrice,
+            stockQuantity, mainImageUrl, bidEndTime, status, createdAt, specifications, productCondition);
+        copy.minPrice = minPrice;
+        copy.maxPrice = maxPrice;
+        copy.totalStock = totalStock;
+        if (skus != null) {
+            copy.skus = skus.stream()
+                .map(s -> new ProductSku(s.getSkuId(), s.getProductId(), s.getSpecJson(), s.getPrice(), s.getStock(), s.getImageUrl()))
+                .collect(Collectors.toList());
+        }
+        if (productImages != null) {
+            copy.productImages = productImages.stream().map(i -> {
+                ProductImage image = new ProductImage(i.getProductId(), i.getImageUrl(), i.getImageName(), i.getSortOrder());
+                image.setImageId(i.getImageId());
+                image.setCreatedAt(i.getCreatedAt());
+                return image;
+            }).collect(Collectors.toList());
+        }
+        return copy;
+    }
+
   
     public ProductDTO(Long id, Long sellerId, String name, String category, String description,
                      BigDecimal startPrice, BigDecimal currentPrice, Integer stockQuantity,
@@ -0,0 +1,15 @@
+package com.example.demo.model.dto;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+public class ProductPageDTO {
+    private List<ProductDTO> items;
+    private boolean hasMore;
+    
+    // 下一頁游標（最後一筆的 createdAt / productId）
+    private LocalDateTime nextCursorCreatedAt;
+    private Long nextCursorId;
+}
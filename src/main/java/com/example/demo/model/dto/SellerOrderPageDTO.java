@@ -0,0 +1,16 @@
+package com.example.demo.model.dto;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class SellerOrderPageDTO {
+    private List<Map<String, Object>> orders;
+    private boolean hasMore;
+    
+    // 下一頁游標（最後一筆的 createdAt / orderId）
+    private LocalDateTime nextCursorCreatedAt;
+    private Long nextCursorId;
+}
@@ -0,0 +1,27 @@
+package com.example.demo.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+//賣家訂單查詢的單列結果（訂單 + 該賣家的一個訂單項目 + 商品 + 買家）
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SellerOrderRowDTO {
+    private Long orderId;
+    private LocalDateTime createdAt;
+    private String status;
+    private BigDecimal totalPrice;
+    private String buyerName;
+    private String receiverPhone;
+    private String receiverAddress;
+    private Long productId;
+    private String productName;
+    private String productImage;
+    private Integer quantity;
+    private BigDecimal price;
+}
@@ -0,0 +1,35 @@
+package com.example.demo.model.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//競標目前最高出價、出價者與出價次數（出價時以 version 比對後更新，不需排序 bids）
+@Entity
+@Table(name = "auction_state")
+@Data
+@NoArgsConstructor
+public class AuctionBidState {
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "highest_bid_amount", precision = 15, scale = 2)
+    private BigDecimal highestBidAmount;
+
+    @Column(name = "highest_bidder_id")
+    private Long highestBidderId;
+
+    @Column(name = "bid_count", nullable = false)
+    private Long bidCount;
+
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -5,7 +5,11 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "bids")
+@Table(name = "bids", indexes = {
+    @Index(name = "idx_bids_bidder", columnList = "bidder_id, bid_id"),
+    @Index(name = "idx_bids_bidder_product", columnList = "bidder_id, product_id, bid_id"),
+    @Index(name = "idx_bids_product_amount", columnList = "product_id, amount")
+})
 public class Bid {
     
     @Id
@@ -0,0 +1,24 @@
+package com.example.demo.model.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//出價日誌已寫入資料庫的最後序號（與該批 bids 同一交易更新，重播時略過已寫入的項目）
+@Entity
+@Table(name = "bid_wal_checkpoint")
+@Data
+@NoArgsConstructor
+public class BidWalCheckpoint {
+    @Id
+    @Column(name = "id")
+    private Integer id;
+
+    @Column(name = "last_sequence", nullable = false)
+    private Long lastSequence;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
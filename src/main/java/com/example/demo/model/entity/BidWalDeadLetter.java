@@ -0,0 +1,38 @@
+package com.example.demo.model.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//出價日誌中逐筆重試仍無法寫入資料庫的項目（保留日誌原始內容與錯誤訊息，供人工處理）
+//金額、時間以原始文字保存，內容本身有問題時也寫得進來
+@Entity
+@Table(name = "bid_wal_dead_letter")
+@Data
+@NoArgsConstructor
+public class BidWalDeadLetter {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "wal_sequence", nullable = false)
+    private Long walSequence;
+
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "bidder_id")
+    private Long bidderId;
+
+    @Column(name = "entry", nullable = false, length = 255)
+    private String entry;
+
+    @Column(name = "error", length = 500)
+    private String error;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
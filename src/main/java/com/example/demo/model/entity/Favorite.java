@@ -9,7 +9,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "favorites")
+@Table(name = "favorites", indexes = {
+    @Index(name = "idx_favorites_user_created", columnList = "user_id, created_at, favorite_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
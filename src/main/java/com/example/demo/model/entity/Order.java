@@ -11,7 +11,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+    @Index(name = "idx_orders_created", columnList = "created_at, order_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -9,7 +9,11 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "order_items")
+@Table(name = "order_items", indexes = {
+    @Index(name = "idx_order_items_order", columnList = "order_id"),
+    @Index(name = "idx_order_items_product", columnList = "product_id"),
+    @Index(name = "idx_order_items_seller_order", columnList = "seller_id, order_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -35,6 +39,19 @@ public class OrderItem {
     @Column(name = "price", precision = 15, scale = 2, nullable = false)
     private BigDecimal price;
     
+    //下單當下的商品快照，之後商品修改或刪除不影響訂單內容
+    @Column(name = "product_name")
+    private String productName;
+    
+    @Column(name = "product_image")
+    private String productImage;
+    
+    @Column(name = "sku_spec", length = 1000)
+    private String skuSpec;
+    
+    @Column(name = "seller_id")
+    private Long sellerId;
+    
     public BigDecimal getTotalPrice() {
         if (price != null && quantity != null) {
             return price.multiply(BigDecimal.valueOf(quantity));
@@ -13,7 +13,12 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "products")
+@Table(name = "products",
+       indexes = {
+           @Index(name = "idx_products_status_created", columnList = "status, created_at, product_id"),
+           @Index(name = "idx_products_category_status_created", columnList = "category, status, created_at, product_id"),
+           @Index(name = "idx_products_status_end", columnList = "status, bid_end_time")
+       })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -62,6 +67,16 @@ public class Product {
     @Column(name = "product_condition")
     private String productCondition;
 
+    //SKU 彙總欄位：由 ProductRepository.refreshSkuAggregates 維護
+    @Column(name = "min_price", precision = 38, scale = 2, updatable = false)
+    private BigDecimal minPrice;
+
+    @Column(name = "max_price", precision = 38, scale = 2, updatable = false)
+    private BigDecimal maxPrice;
+
+    @Column(name = "total_stock", updatable = false)
+    private Integer totalStock;
+
     
     @OneToMany(mappedBy = "productId", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
@@ -162,6 +177,9 @@ public class Product {
     
   
     public BigDecimal getMinPrice() {
+        if (minPrice != null) {
+            return minPrice;
+        }
         if (skus != null && !skus.isEmpty()) {
             return skus.stream()
                 .map(ProductSku::getPrice)
@@ -174,6 +192,9 @@ public class Product {
     
 
     public BigDecimal getMaxPrice() {
+        if (maxPrice != null) {
+            return maxPrice;
+        }
         if (skus != null && !skus.isEmpty()) {
             return skus.stream()
                 .map(ProductSku::getPrice)
@@ -196,6 +217,15 @@ public class Product {
         if (this.currentPrice == null && this.startPrice != null) {
             this.currentPrice = this.startPrice;
         }
+        if (this.minPrice == null) {
+            this.minPrice = this.currentPrice;
+        }
+        if (this.maxPrice == null) {
+            this.maxPrice = this.currentPrice;
+        }
+        if (this.totalStock == null) {
+            this.totalStock = this.stockQuantity;
+        }
     }
     
     @Override
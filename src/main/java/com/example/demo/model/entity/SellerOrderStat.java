@@ -0,0 +1,43 @@
+package com.example.demo.model.entity;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+//賣家各狀態訂單數與金額的彙總（由訂單建立/取消/改狀態時同一交易增減）
+@Entity
+@Table(name = "seller_order_stats")
+@IdClass(SellerOrderStat.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SellerOrderStat {
+    @Id
+    @Column(name = "seller_id")
+    private Long sellerId;
+
+    @Id
+    @Column(name = "status", length = 20)
+    private String status;
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount;
+
+    //該賣家在這些訂單中的項目金額合計
+    @Column(name = "revenue", precision = 15, scale = 2, nullable = false)
+    private BigDecimal revenue;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Long sellerId;
+        private String status;
+    }
+}
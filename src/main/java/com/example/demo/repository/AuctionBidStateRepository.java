@@ -0,0 +1,44 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.entity.AuctionBidState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Repository
+public interface AuctionBidStateRepository extends JpaRepository<AuctionBidState, Long> {
+
+    //出價：版本相同且出價高於目前最高價才更新，回傳 0 表示已被其他出價搶先
+    @Modifying
+    @Query("UPDATE AuctionBidState s SET s.highestBidAmount = :amount, s.highestBidderId = :bidderId, " +
+           "s.bidCount = s.bidCount + 1, s.version = s.version + 1, s.updatedAt = :now " +
+           "WHERE s.productId = :productId AND s.version = :version AND " +
+           "(s.highestBidAmount IS NULL OR s.highestBidAmount < :amount)")
+    int acceptBid(@Param("productId") Long productId, @Param("version") Long version,
+                  @Param("amount") BigDecimal amount, @Param("bidderId") Long bidderId,
+                  @Param("now") LocalDateTime now);
+
+    //直購：以直購價成交並結束競標
+    @Modifying
+    @Query("UPDATE AuctionBidState s SET s.highestBidAmount = :amount, s.highestBidderId = :bidderId, " +
+           "s.bidCount = s.bidCount + 1, s.version = s.version + 1, s.updatedAt = :now " +
+           "WHERE s.productId = :productId")
+    int recordBuyNow(@Param("productId") Long productId, @Param("amount") BigDecimal amount,
+                     @Param("bidderId") Long bidderId, @Param("now") LocalDateTime now);
+
+    //由 bids 補建尚未有紀錄的競標
+    @Modifying
+    @Query(value = "INSERT INTO auction_state (product_id, highest_bid_amount, highest_bidder_id, bid_count, version, updated_at) " +
+                   "SELECT b.product_id, MAX(b.amount), " +
+                   "(SELECT h.bidder_id FROM bids h WHERE h.product_id = b.product_id ORDER BY h.amount DESC, h.bid_id DESC LIMIT 1), " +
+                   "COUNT(*), 0, NOW() " +
+                   "FROM bids b WHERE NOT EXISTS (SELECT 1 FROM auction_state s WHERE s.product_id = b.product_id) " +
+                   "GROUP BY b.product_id",
+           nativeQuery = true)
+    int backfill();
+}
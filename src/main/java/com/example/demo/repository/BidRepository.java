@@ -1,6 +1,8 @@
 package com.example.demo.repository;
 
+import com.example.demo.model.dto.MyBidRowDTO;
 import com.example.demo.model.entity.Bid;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -26,6 +28,27 @@ public interface BidRepository extends JpaRepository<Bid, Long> {
     @Query("SELECT DISTINCT b.bidderId FROM Bid b WHERE b.productId = :productId")
     List<Long> findDistinctBiddersByProductId(@Param("productId") Long productId);
     
+    //用戶的出價紀錄分頁（游標為 bidId，由新到舊），一併帶出商品與該商品目前最高價
+    @Query("SELECT new com.example.demo.model.dto.MyBidRowDTO(" +
+           "b.bidId, b.productId, p.name, b.amount, b.bidTime, p.bidEndTime, s.highestBidAmount) " +
+           "FROM Bid b LEFT JOIN Product p ON p.productId = b.productId " +
+           "LEFT JOIN AuctionBidState s ON s.productId = b.productId " +
+           "WHERE b.bidderId = :bidderId AND b.bidId < :cursorId " +
+           "ORDER BY b.bidId DESC")
+    List<MyBidRowDTO> findMyBidsPage(@Param("bidderId") Long bidderId,
+                                     @Param("cursorId") Long cursorId,
+                                     Pageable pageable);
 
-    List<Bid> findByBidderIdOrderByBidTimeDesc(Long bidderId);
+    //同上，但每個商品只取自己最新的一筆出價，並附上自己在該商品的出價次數
+    @Query("SELECT new com.example.demo.model.dto.MyBidRowDTO(" +
+           "b.bidId, b.productId, p.name, b.amount, b.bidTime, p.bidEndTime, s.highestBidAmount, " +
+           "(SELECT COUNT(c) FROM Bid c WHERE c.bidderId = b.bidderId AND c.productId = b.productId)) " +
+           "FROM Bid b LEFT JOIN Product p ON p.productId = b.productId " +
+           "LEFT JOIN AuctionBidState s ON s.productId = b.productId " +
+           "WHERE b.bidderId = :bidderId AND b.bidId < :cursorId AND " +
+           "b.bidId = (SELECT MAX(l.bidId) FROM Bid l WHERE l.bidderId = b.bidderId AND l.productId = b.productId) " +
+           "ORDER BY b.bidId DESC")
+    List<MyBidRowDTO> findMyLatestBidsPage(@Param("bidderId") Long bidderId,
+                                           @Param("cursorId") Long cursorId,
+                                           Pageable pageable);
 }
@@ -0,0 +1,9 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.entity.BidWalCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BidWalCheckpointRepository extends JpaRepository<BidWalCheckpoint, Integer> {
+}
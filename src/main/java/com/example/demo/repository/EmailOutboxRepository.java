@@ -0,0 +1,58 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.entity.EmailOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    //到期待寄送的郵件
+    @Query("SELECT e FROM EmailOutbox e WHERE e.status = com.example.demo.model.entity.EmailOutbox.Status.PENDING " +
+           "AND e.nextAttemptAt <= :now ORDER BY e.nextAttemptAt, e.outboxId")
+    List<EmailOutbox> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+    //取出寄送（只更新仍為 PENDING 的筆數並寫入批次代號，避免重複寄送）
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = com.example.demo.model.entity.EmailOutbox.Status.SENDING, " +
+           "e.claimToken = :token " +
+           "WHERE e.outboxId IN :ids AND e.status = com.example.demo.model.entity.EmailOutbox.Status.PENDING")
+    int claim(@Param("ids") Collection<Long> ids, @Param("token") String token);
+
+    //這次實際取到的郵件（其他節點先取走的不在內）
+    @Query("SELECT e FROM EmailOutbox e WHERE e.claimToken = :token " +
+           "AND e.status = com.example.demo.model.entity.EmailOutbox.Status.SENDING")
+    List<EmailOutbox> findClaimed(@Param("token") String token);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = com.example.demo.model.entity.EmailOutbox.Status.SENT, " +
+           "e.attempts = e.attempts + 1, e.sentAt = :now, e.lastError = NULL WHERE e.outboxId = :id")
+    int markSent(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = :status, e.attempts = e.attempts + 1, " +
+           "e.nextAttemptAt = :nextAttemptAt, e.lastError = :error WHERE e.outboxId = :id")
+    int markFailed(@Param("id") Long id, @Param("status") EmailOutbox.Status status,
+                   @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("error") String error);
+
+    //重啟時把中斷的寄送放回佇列
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutbox e SET e.status = com.example.demo.model.entity.EmailOutbox.Status.PENDING " +
+           "WHERE e.status = com.example.demo.model.entity.EmailOutbox.Status.SENDING")
+    int resetSending();
+
+    long countByStatus(EmailOutbox.Status status);
+}
@@ -1,7 +1,9 @@
 package com.example.demo.repository;
 
+import com.example.demo.model.dto.FavoriteRowDTO;
 import com.example.demo.model.entity.Favorite;
 import com.example.demo.model.entity.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -9,17 +11,23 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface FavoriteRepository extends JpaRepository<Favorite, Long> {
-	   @Query("SELECT f FROM Favorite f " +
-	           "JOIN FETCH f.product p " +
-	           "LEFT JOIN FETCH p.skus " +
-	           "WHERE f.userId = :userId " +
-	           "ORDER BY f.createdAt DESC")
-	    List<Favorite> findByUserIdWithProductOrderByCreatedAtDesc(@Param("userId") Long userId);
+    //收藏列表分頁（游標為 createdAt / favoriteId）
+    @Query("SELECT new com.example.demo.model.dto.FavoriteRowDTO(" +
+           "f.favoriteId, p.productId, p.name, p.mainImageUrl, p.currentPrice, p.startPrice, f.createdAt) " +
+           "FROM Favorite f JOIN f.product p " +
+           "WHERE f.userId = :userId AND " +
+           "(f.createdAt < :cursorCreatedAt OR (f.createdAt = :cursorCreatedAt AND f.favoriteId < :cursorId)) " +
+           "ORDER BY f.createdAt DESC, f.favoriteId DESC")
+    List<FavoriteRowDTO> findFavoriteRowsPage(@Param("userId") Long userId,
+                                              @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                              @Param("cursorId") Long cursorId,
+                                              Pageable pageable);
 
 
   
@@ -33,6 +41,10 @@ public interface FavoriteRepository extends JpaRepository<Favorite, Long> {
     
     long countByUserId(Long userId);
 
+    //用戶收藏的商品 ID（收藏狀態索引載入用）
+    @Query("SELECT f.product.productId FROM Favorite f WHERE f.userId = :userId")
+    List<Long> findProductIdsByUserId(@Param("userId") Long userId);
+
     
     @Query("SELECT CASE WHEN COUNT(f) > 0 THEN true ELSE false END FROM Favorite f WHERE f.userId = :userId AND f.product.productId = :productId")
     boolean existsByUserIdAndProductId(@Param("userId") Long userId, @Param("productId") Long productId);
@@ -0,0 +1,28 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.entity.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    //只新增不合併：Key 已存在時丟出 DataIntegrityViolationException，不會覆蓋先寫入的結果
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO idempotency_keys (idempotency_key, status_code, response_body, created_at) " +
+                   "VALUES (:key, :statusCode, :body, :createdAt)", nativeQuery = true)
+    int insert(@Param("key") String key, @Param("statusCode") int statusCode,
+               @Param("body") String body, @Param("createdAt") LocalDateTime createdAt);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.createdAt < :before")
+    int deleteByCreatedAtBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,105 @@
+package com.example.demo.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//庫存異動：以條件式 UPDATE 批次扣減/回補，不先讀再寫
+@Repository
+public class InventoryRepository {
+
+    private static final String DECREMENT_SKU =
+        "UPDATE product_skus SET stock = stock - ? WHERE sku_id = ? AND stock >= ?";
+    private static final String DECREMENT_PRODUCT =
+        "UPDATE products SET stock_quantity = stock_quantity - ? WHERE product_id = ? AND stock_quantity >= ?";
+    private static final String INCREMENT_SKU =
+        "UPDATE product_skus SET stock = stock + ? WHERE sku_id = ?";
+    private static final String INCREMENT_PRODUCT =
+        "UPDATE products SET stock_quantity = stock_quantity + ? WHERE product_id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    //扣庫存：回傳庫存不足（未更新）的項目，呼叫端需在交易內並於失敗時回滾
+    public List<StockChange> decrementStock(List<StockChange> changes) {
+        List<StockChange> skuChanges = new ArrayList<>();
+        List<StockChange> productChanges = new ArrayList<>();
+        split(changes, skuChanges, productChanges);
+
+        List<StockChange> failed = new ArrayList<>();
+        if (!skuChanges.isEmpty()) {
+            List<Object[]> args = new ArrayList<>();
+            for (StockChange c : skuChanges) {
+                args.add(new Object[]{c.getQuantity(), c.getSkuId(), c.getQuantity()});
+            }
+            collectFailed(jdbcTemplate.batchUpdate(DECREMENT_SKU, args), skuChanges, failed);
+        }
+        if (!productChanges.isEmpty()) {
+            List<Object[]> args = new ArrayList<>();
+            for (StockChange c : productChanges) {
+                args.add(new Object[]{c.getQuantity(), c.getProductId(), c.getQuantity()});
+            }
+            collectFailed(jdbcTemplate.batchUpdate(DECREMENT_PRODUCT, args), productChanges, failed);
+        }
+        return failed;
+    }
+
+    //回補庫存（取消訂單）
+    public void incrementStock(List<StockChange> changes) {
+        List<StockChange> skuChanges = new ArrayList<>();
+        List<StockChange> productChanges = new ArrayList<>();
+        split(changes, skuChanges, productChanges);
+
+        if (!skuChanges.isEmpty()) {
+            List<Object[]> args = new ArrayList<>();
+            for (StockChange c : skuChanges) {
+                args.add(new Object[]{c.getQuantity(), c.getSkuId()});
+            }
+            jdbcTemplate.batchUpdate(INCREMENT_SKU, args);
+        }
+        if (!productChanges.isEmpty()) {
+            List<Object[]> args = new ArrayList<>();
+            for (StockChange c : productChanges) {
+                args.add(new Object[]{c.getQuantity(), c.getProductId()});
+            }
+            jdbcTemplate.batchUpdate(INCREMENT_PRODUCT, args);
+        }
+    }
+
+    private void split(List<StockChange> changes, List<StockChange> skuChanges, List<StockChange> productChanges) {
+        for (StockChange c : changes) {
+            if (c.getSkuId() != null) {
+                skuChanges.add(c);
+            } else {
+                productChanges.add(c);
+            }
+        }
+    }
+
+    private void collectFailed(int[] counts, List<StockChange> changes, List<StockChange> failed) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                failed.add(changes.get(i));
+            }
+        }
+    }
+
+    public static class StockChange {
+        private final Long productId;
+        private final Long skuId;
+        private final int quantity;
+
+        public StockChange(Long productId, Long skuId, int quantity) {
+            this.productId = productId;
+            this.skuId = skuId;
+            this.quantity = quantity;
+        }
+
+        public Long getProductId() { return productId; }
+        public Long getSkuId() { return skuId; }
+        public int getQuantity() { return quantity; }
+    }
+}
@@ -2,8 +2,11 @@ package com.example.demo.repository;
 
 import com.example.demo.model.entity.OrderItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -11,4 +14,18 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
     List<OrderItem> findByOrderId(Long orderId);
     List<OrderItem> findByProductId(Long productId);
     void deleteByOrderId(Long orderId);
+    List<OrderItem> findByOrderIdIn(Collection<Long> orderIds);
+    boolean existsByOrderIdAndSellerId(Long orderId, Long sellerId);
+    
+    //補齊舊訂單項目的商品快照（商品已刪除的保留 NULL）
+    @Modifying
+    @Query(value = "UPDATE order_items SET " +
+           "product_name = (SELECT p.name FROM products p WHERE p.product_id = order_items.product_id), " +
+           "product_image = (SELECT p.main_image_url FROM products p WHERE p.product_id = order_items.product_id), " +
+           "seller_id = (SELECT p.seller_id FROM products p WHERE p.product_id = order_items.product_id), " +
+           "sku_spec = (SELECT s.spec_json FROM product_skus s WHERE s.sku_id = order_items.sku_id) " +
+           "WHERE seller_id IS NULL AND " +
+           "EXISTS (SELECT 1 FROM products p WHERE p.product_id = order_items.product_id)",
+           nativeQuery = true)
+    int backfillSnapshots();
 }
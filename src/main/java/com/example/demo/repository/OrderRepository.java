@@ -1,11 +1,16 @@
 package com.example.demo.repository;
 
+import com.example.demo.model.dto.SellerOrderRowDTO;
 import com.example.demo.model.entity.Order;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +20,17 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     Optional<Order> findByOrderIdAndUserId(Long orderId, Long userId);
     List<Order> findByStatus(String status);
     
+    //鎖定訂單列讀取狀態（交易結束前其他請求無法修改）
+    @Query(value = "SELECT status FROM orders WHERE order_id = :orderId FOR UPDATE", nativeQuery = true)
+    Optional<String> findStatusByIdForUpdate(@Param("orderId") Long orderId);
+    
+    //條件式改狀態（目前狀態須為 fromStatus），回傳 0 表示已被其他請求改過
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :toStatus WHERE o.orderId = :orderId AND o.status = :fromStatus")
+    int updateStatusIf(@Param("orderId") Long orderId,
+                       @Param("fromStatus") String fromStatus,
+                       @Param("toStatus") String toStatus);
+    
     //查詢賣家的所有訂單
     @Query("SELECT DISTINCT o FROM Order o " +
            "JOIN OrderItem oi ON o.orderId = oi.orderId " +
@@ -31,6 +47,29 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
            "ORDER BY o.createdAt DESC")
     List<Order> findSellerOrdersByStatus(@Param("sellerId") Long sellerId, @Param("status") String status);
     
+    //賣家訂單分頁：只取訂單 ID（游標為 createdAt / orderId，status 為 null 時不過濾）
+    @Query("SELECT o.orderId FROM Order o " +
+           "WHERE (:status IS NULL OR o.status = :status) AND " +
+           "EXISTS (SELECT 1 FROM OrderItem oi WHERE oi.orderId = o.orderId AND oi.sellerId = :sellerId) AND " +
+           "(o.createdAt < :cursorCreatedAt OR (o.createdAt = :cursorCreatedAt AND o.orderId < :cursorId)) " +
+           "ORDER BY o.createdAt DESC, o.orderId DESC")
+    List<Long> findSellerOrderIdsPage(@Param("sellerId") Long sellerId,
+                                      @Param("status") String status,
+                                      @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                      @Param("cursorId") Long cursorId,
+                                      Pageable pageable);
+    
+    //一次取出分頁內訂單的賣家項目（含下單時的商品名稱圖片快照）與買家名稱
+    @Query("SELECT new com.example.demo.model.dto.SellerOrderRowDTO(" +
+           "o.orderId, o.createdAt, o.status, o.totalPrice, u.username, o.receiverPhone, o.receiverAddress, " +
+           "oi.productId, oi.productName, oi.productImage, oi.quantity, oi.price) " +
+           "FROM Order o JOIN OrderItem oi ON oi.orderId = o.orderId " +
+           "LEFT JOIN User u ON u.userId = o.userId " +
+           "WHERE o.orderId IN :orderIds AND oi.sellerId = :sellerId " +
+           "ORDER BY o.createdAt DESC, o.orderId DESC, oi.itemId")
+    List<SellerOrderRowDTO> findSellerOrderRows(@Param("orderIds") Collection<Long> orderIds,
+                                                @Param("sellerId") Long sellerId);
+    
     //查詢賣家的待處理訂單
     @Query("SELECT DISTINCT o FROM Order o " +
            "JOIN OrderItem oi ON o.orderId = oi.orderId " +
@@ -42,8 +81,7 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     //統計賣家各狀態訂單數量
     @Query("SELECT o.status, COUNT(DISTINCT o.orderId) FROM Order o " +
            "JOIN OrderItem oi ON o.orderId = oi.orderId " +
-           "JOIN Product p ON oi.productId = p.productId " +
-           "WHERE p.sellerId = :sellerId " +
+           "WHERE oi.sellerId = :sellerId " +
            "GROUP BY o.status")
     List<Object[]> countSellerOrdersByStatus(@Param("sellerId") Long sellerId);
 }
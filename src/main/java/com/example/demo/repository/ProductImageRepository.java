@@ -3,9 +3,12 @@ package com.example.demo.repository;
 import com.example.demo.model.entity.ProductImage;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -13,6 +16,14 @@ public interface ProductImageRepository extends JpaRepository<ProductImage, Long
     
     List<ProductImage> findByProductIdOrderBySortOrderAsc(Long productId);
     
+    List<ProductImage> findByProductIdInOrderBySortOrderAsc(Collection<Long> productIds);
+    
+    //各商品排序最前面的圖片（同排序值可能多筆，由呼叫端取第一筆）
+    @Query("SELECT i FROM ProductImage i WHERE i.productId IN :productIds AND i.sortOrder = " +
+           "(SELECT MIN(i2.sortOrder) FROM ProductImage i2 WHERE i2.productId = i.productId) " +
+           "ORDER BY i.productId, i.imageId")
+    List<ProductImage> findFirstImagesByProductIdIn(@Param("productIds") Collection<Long> productIds);
+    
     int countByProductId(Long productId);
     
     @Modifying
@@ -2,12 +2,15 @@ package com.example.demo.repository;
 
 import com.example.demo.model.dto.ProductDTO;
 import com.example.demo.model.entity.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -34,15 +37,9 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
            "p.id, p.sellerId, p.name, p.category, p.description, p.startPrice, " +
            "p.currentPrice, p.stockQuantity, p.mainImageUrl, p.bidEndTime, " +
            "CAST(p.status AS string), p.createdAt, p.specifications, p.productCondition, " +
-           "COALESCE(MIN(sku.price), p.currentPrice), " +
-           "COALESCE(MAX(sku.price), p.currentPrice), " +
-           "COALESCE(SUM(sku.stock), p.stockQuantity)) " +
-           "FROM Product p LEFT JOIN ProductSku sku ON sku.productId = p.id " +
-           "WHERE p.status IN ('ACTIVE', 'AUCTION') AND " +
+           "p.minPrice, p.maxPrice, CAST(p.totalStock AS Long)) " +
+           "FROM Product p WHERE p.status IN ('ACTIVE', 'AUCTION') AND " +
            "(p.bidEndTime IS NULL OR p.bidEndTime > CURRENT_TIMESTAMP) " +
-           "GROUP BY p.id, p.sellerId, p.name, p.category, p.description, p.startPrice, " +
-           "p.currentPrice, p.stockQuantity, p.mainImageUrl, p.bidEndTime, " +
-           "p.status, p.createdAt, p.specifications, p.productCondition " +
            "ORDER BY p.createdAt DESC")
     List<ProductDTO> findActiveProductsWithSkuData();
 
@@ -51,14 +48,8 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
            "p.id, p.sellerId, p.name, p.category, p.description, p.startPrice, " +
            "p.currentPrice, p.stockQuantity, p.mainImageUrl, p.bidEndTime, " +
            "CAST(p.status AS string), p.createdAt, p.specifications, p.productCondition, " +
-           "COALESCE(MIN(sku.price), p.currentPrice), " +
-           "COALESCE(MAX(sku.price), p.currentPrice), " +
-           "COALESCE(SUM(sku.stock), p.stockQuantity)) " +
-           "FROM Product p LEFT JOIN ProductSku sku ON sku.productId = p.id " +
-           "WHERE p.sellerId = :userId " +
-           "GROUP BY p.id, p.sellerId, p.name, p.category, p.description, p.startPrice, " +
-           "p.currentPrice, p.stockQuantity, p.mainImageUrl, p.bidEndTime, " +
-           "p.status, p.createdAt, p.specifications, p.productCondition " +
+           "p.minPrice, p.maxPrice, CAST(p.totalStock AS Long)) " +
+           "FROM Product p WHERE p.sellerId = :userId " +
            "ORDER BY p.createdAt DESC")
     List<ProductDTO> findDTOsBySellerIdWithSkuData(@Param("userId") Long userId);
 
@@ -66,40 +57,103 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     @Query("SELECT new com.example.demo.model.dto.ProductDTO(" +
            "p.id, p.sellerId, p.name, p.category, p.description, p.startPrice, " +
            "p.currentPrice, p.stockQuantity, p.mainImageUrl, p.bidEndTime, " +
-           "CAST(p.status AS string), p.createdAt, p.specifications, p.productCondition) " +
+           "CAST(p.status AS string), p.createdAt, p.specifications, p.productCondition, " +
+           "p.minPrice, p.maxPrice, CAST(p.totalStock AS Long)) " +
            "FROM Product p WHERE p.status IN ('ACTIVE', 'AUCTION') AND " +
            "(p.bidEndTime IS NULL OR p.bidEndTime > CURRENT_TIMESTAMP) " +
            "ORDER BY p.createdAt DESC")
     List<ProductDTO> findActiveProducts();
 
+    //上架商品分頁（createdAt + productId 游標）
+    @Query("SELECT new com.example.demo.model.dto.ProductDTO(" +
+           "p.id, p.sellerId, p.name, p.category, p.description, p.startPrice, " +
+           "p.currentPrice, p.stockQuantity, p.mainImageUrl, p.bidEndTime, " +
+           "CAST(p.status AS string), p.createdAt, p.specifications, p.productCondition, " +
+           "p.minPrice, p.maxPrice, CAST(p.totalStock AS Long)) " +
+           "FROM Product p WHERE p.status IN ('ACTIVE', 'AUCTION') AND " +
+           "(p.bidEndTime IS NULL OR p.bidEndTime > CURRENT_TIMESTAMP) AND " +
+           "(p.createdAt < :cursorCreatedAt OR (p.createdAt = :cursorCreatedAt AND p.id < :cursorId)) " +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    List<ProductDTO> findActiveProductsPage(@Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                            @Param("cursorId") Long cursorId,
+                                            Pageable pageable);
+
     //查詢用戶商品
     @Query("SELECT new com.example.demo.model.dto.ProductDTO(" +
            "p.id, p.sellerId, p.name, p.category, p.description, p.startPrice, " +
            "p.currentPrice, p.stockQuantity, p.mainImageUrl, p.bidEndTime, " +
-           "CAST(p.status AS string), p.createdAt, p.specifications, p.productCondition) " +
+           "CAST(p.status AS string), p.createdAt, p.specifications, p.productCondition, " +
+           "p.minPrice, p.maxPrice, CAST(p.totalStock AS Long)) " +
            "FROM Product p WHERE p.sellerId = :userId " +
            "ORDER BY p.createdAt DESC")
     List<ProductDTO> findDTOsBySellerId(@Param("userId") Long userId);
     
-    //分類商品查詢
+    //分類商品查詢（uncategorized 為 true 時一併列出沒有分類的商品，與分類統計的「其他」一致）
     @Query("SELECT new com.example.demo.model.dto.ProductDTO(" +
            "p.id, p.sellerId, p.name, p.category, p.description, p.startPrice, " +
            "p.currentPrice, p.stockQuantity, p.mainImageUrl, p.bidEndTime, " +
-           "CAST(p.status AS string), p.createdAt, p.specifications, p.productCondition) " +
-           "FROM Product p WHERE p.category = :category AND " +
+           "CAST(p.status AS string), p.createdAt, p.specifications, p.productCondition, " +
+           "p.minPrice, p.maxPrice, CAST(p.totalStock AS Long)) " +
+           "FROM Product p WHERE (p.category = :category OR " +
+           "(:uncategorized = true AND (p.category IS NULL OR TRIM(p.category) = ''))) AND " +
            "p.status IN ('ACTIVE', 'AUCTION') AND " +
            "(p.bidEndTime IS NULL OR p.bidEndTime > CURRENT_TIMESTAMP) " +
            "ORDER BY p.createdAt DESC")
-    List<ProductDTO> findActiveByCategoryWithDto(@Param("category") String category);
+    List<ProductDTO> findActiveByCategoryWithDto(@Param("category") String category,
+                                                 @Param("uncategorized") boolean uncategorized);
+
+    //分類商品分頁（createdAt + productId 游標）
+    @Query("SELECT new com.example.demo.model.dto.ProductDTO(" +
+           "p.id, p.sellerId, p.name, p.category, p.description, p.startPrice, " +
+           "p.currentPrice, p.stockQuantity, p.mainImageUrl, p.bidEndTime, " +
+           "CAST(p.status AS string), p.createdAt, p.specifications, p.productCondition, " +
+           "p.minPrice, p.maxPrice, CAST(p.totalStock AS Long)) " +
+           "FROM Product p WHERE (p.category = :category OR " +
+           "(:uncategorized = true AND (p.category IS NULL OR TRIM(p.category) = ''))) AND " +
+           "p.status IN ('ACTIVE', 'AUCTION') AND " +
+           "(p.bidEndTime IS NULL OR p.bidEndTime > CURRENT_TIMESTAMP) AND " +
+           "(p.createdAt < :cursorCreatedAt OR (p.createdAt = :cursorCreatedAt AND p.id < :cursorId)) " +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    List<ProductDTO> findActiveByCategoryPage(@Param("category") String category,
+                                              @Param("uncategorized") boolean uncategorized,
+                                              @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                              @Param("cursorId") Long cursorId,
+                                              Pageable pageable);
     
-    //搜尋商品
+    //搜尋結果依 ID 批次載入（排序由搜尋索引決定）
     @Query("SELECT new com.example.demo.model.dto.ProductDTO(" +
            "p.id, p.sellerId, p.name, p.category, p.description, p.startPrice, " +
            "p.currentPrice, p.stockQuantity, p.mainImageUrl, p.bidEndTime, " +
-           "CAST(p.status AS string), p.createdAt, p.specifications, p.productCondition) " +
-           "FROM Product p WHERE LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%')) AND " +
+           "CAST(p.status AS string), p.createdAt, p.specifications, p.productCondition, " +
+           "p.minPrice, p.maxPrice, CAST(p.totalStock AS Long)) " +
+           "FROM Product p WHERE p.id IN :ids AND " +
            "p.status IN ('ACTIVE', 'AUCTION') AND " +
-           "(p.bidEndTime IS NULL OR p.bidEndTime > CURRENT_TIMESTAMP) " +
-           "ORDER BY p.createdAt DESC")
-    List<ProductDTO> searchActiveProductsWithDto(@Param("keyword") String keyword);
+           "(p.bidEndTime IS NULL OR p.bidEndTime > CURRENT_TIMESTAMP)")
+    List<ProductDTO> findActiveDTOsByIdIn(@Param("ids") Collection<Long> ids);
+
+    //重新計算 SKU 彙總欄位（無 SKU 時沿用商品本身的價格與庫存）
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE products p SET " +
+           "p.min_price = COALESCE((SELECT MIN(s.price) FROM product_skus s WHERE s.product_id = p.product_id), p.current_price), " +
+           "p.max_price = COALESCE((SELECT MAX(s.price) FROM product_skus s WHERE s.product_id = p.product_id), p.current_price), " +
+           "p.total_stock = COALESCE((SELECT SUM(s.stock) FROM product_skus s WHERE s.product_id = p.product_id), p.stock_quantity) " +
+           "WHERE p.product_id = :productId", nativeQuery = true)
+    int refreshSkuAggregates(@Param("productId") Long productId);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE products p SET " +
+           "p.min_price = COALESCE((SELECT MIN(s.price) FROM product_skus s WHERE s.product_id = p.product_id), p.current_price), " +
+           "p.max_price = COALESCE((SELECT MAX(s.price) FROM product_skus s WHERE s.product_id = p.product_id), p.current_price), " +
+           "p.total_stock = COALESCE((SELECT SUM(s.stock) FROM product_skus s WHERE s.product_id = p.product_id), p.stock_quantity) " +
+           "WHERE p.product_id IN (:productIds)", nativeQuery = true)
+    int refreshSkuAggregatesIn(@Param("productIds") Collection<Long> productIds);
+
+    //補齊尚未計算彙總欄位的舊資料
+    @Modifying
+    @Query(value = "UPDATE products p SET " +
+           "p.min_price = COALESCE((SELECT MIN(s.price) FROM product_skus s WHERE s.product_id = p.product_id), p.current_price), " +
+           "p.max_price = COALESCE((SELECT MAX(s.price) FROM product_skus s WHERE s.product_id = p.product_id), p.current_price), " +
+           "p.total_stock = COALESCE((SELECT SUM(s.stock) FROM product_skus s WHERE s.product_id = p.product_id), p.stock_quantity) " +
+           "WHERE p.total_stock IS NULL", nativeQuery = true)
+    int backfillSkuAggregates();
 }
@@ -3,10 +3,12 @@ package com.example.demo.repository;
 import com.example.demo.model.entity.ProductSku;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface ProductSkuRepository extends JpaRepository<ProductSku, Long> {
     List<ProductSku> findByProductId(Long productId);
+    List<ProductSku> findByProductIdIn(Collection<Long> productIds);
     void deleteByProductId(Long productId);
 }
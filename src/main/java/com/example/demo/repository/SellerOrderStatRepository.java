@@ -0,0 +1,36 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.entity.SellerOrderStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Repository
+public interface SellerOrderStatRepository extends JpaRepository<SellerOrderStat, SellerOrderStat.Key> {
+
+    List<SellerOrderStat> findBySellerId(Long sellerId);
+
+    //累加（不存在則新增），需在訂單交易內呼叫
+    @Modifying
+    @Query(value = "INSERT INTO seller_order_stats (seller_id, status, order_count, revenue) " +
+                   "VALUES (:sellerId, :status, :countDelta, :revenueDelta) " +
+                   "ON DUPLICATE KEY UPDATE order_count = order_count + :countDelta, revenue = revenue + :revenueDelta",
+           nativeQuery = true)
+    int add(@Param("sellerId") Long sellerId, @Param("status") String status,
+            @Param("countDelta") long countDelta, @Param("revenueDelta") BigDecimal revenueDelta);
+
+    //由現有訂單重建彙總（資料表為空時使用）
+    @Modifying
+    @Query(value = "INSERT INTO seller_order_stats (seller_id, status, order_count, revenue) " +
+                   "SELECT oi.seller_id, o.status, COUNT(DISTINCT o.order_id), SUM(oi.price * oi.quantity) " +
+                   "FROM orders o JOIN order_items oi ON oi.order_id = o.order_id " +
+                   "WHERE oi.seller_id IS NOT NULL AND o.status IS NOT NULL " +
+                   "GROUP BY oi.seller_id, o.status",
+           nativeQuery = true)
+    int rebuild();
+}
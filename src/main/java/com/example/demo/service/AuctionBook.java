@@ -0,0 +1,472 @@
+package com.example.demo.service;
+
+import com.example.demo.model.dto.BidCheck;
+import com.example.demo.model.entity.AuctionBidState;
+import com.example.demo.model.entity.Bid;
+import com.example.demo.model.entity.Product;
+import com.example.demo.repository.AuctionBidStateRepository;
+import com.example.demo.repository.BidRepository;
+import com.example.demo.repository.ProductRepository;
+import com.example.demo.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+//競標簿：每個商品的最高出價、出價者、出價次數與最近出價常駐記憶體
+//同一商品的出價在該商品的鎖內依序處理，不同商品可平行出價
+//競標資訊查詢直接讀取預先組好的快照（每次出價後在通道內重建），不查資料庫
+//只保留競標商品；閒置或已結標的競標定時移出，下次存取重新載入
+//出價以 auction_state 的 version 做比對更新，多台主機同時出價時只有一筆成功，失敗者重新載入後再驗證
+//記憶體中的最高出價者只作參考：以「已是最高出價者」回絕前先重新讀取 auction_state，以資料庫為準
+//（最高價只會上升，舊值只會讓最低出價偏低，出價過低不必重新讀取）
+//啟用出價日誌時改為寫入本機日誌後即回應，由日誌批次寫入資料庫（單台主機處理出價）
+@Service
+public class AuctionBook {
+
+    static final BigDecimal MIN_INCREMENT = new BigDecimal("10");
+    static final int RECENT_BIDS = 10;
+    static final int MAX_BID_ATTEMPTS = 3;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private BidRepository bidRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AuctionBidStateRepository auctionBidStateRepository;
+
+    @Autowired
+    private AuctionBroadcaster auctionBroadcaster;
+
+    @Autowired
+    private BidWriteAheadLog bidWriteAheadLog;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.auction.book.idle-minutes:30}")
+    private long idleMinutes;
+
+    @Value("${app.auction.book.ended-idle-seconds:60}")
+    private long endedIdleSeconds;
+
+    private final ConcurrentHashMap<Long, AuctionState> states = new ConcurrentHashMap<>();
+    // 每次捨棄狀態都遞增，載入期間若有異動則不放入舊資料
+    private final AtomicLong invalidations = new AtomicLong();
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        // 日誌中的出價無法寫入資料庫時，捨棄記憶體中已包含該出價的狀態，下次存取依資料庫重新載入
+        bidWriteAheadLog.onDeadLetter(this::refresh);
+    }
+
+    //取得競標狀態（第一次存取時從資料庫載入，非競標商品不保留）
+    AuctionState get(Long productId) {
+        while (true) {
+            AuctionState state = states.get(productId);
+            if (state != null) {
+                state.lastAccess = System.currentTimeMillis();
+                return state;
+            }
+            long generation = invalidations.get();
+            AuctionState loaded = load(productId);
+            if (loaded == null || loaded.bidEndTime == null) {
+                return loaded;
+            }
+            AuctionState existing = states.putIfAbsent(productId, loaded);
+            if (existing != null) {
+                continue;
+            }
+            // 載入期間商品有異動（retire 先遞增再移除），捨棄這份重新載入
+            if (invalidations.get() != generation) {
+                discard(productId, loaded);
+                continue;
+            }
+            return loaded;
+        }
+    }
+
+    //競標資訊快照（非競標商品回傳 null）
+    public Map<String, Object> snapshot(Long productId) {
+        AuctionState state = get(productId);
+        return state != null ? state.snapshot : null;
+    }
+
+    //在該商品的出價通道內執行（同一商品同時只有一個寫入者）
+    <T> T inLane(Long productId, Function<AuctionState, T> action) {
+        while (true) {
+            AuctionState state = get(productId);
+            if (state == null) {
+                throw new IllegalArgumentException("商品不存在");
+            }
+            synchronized (state) {
+                if (!state.retired) {
+                    return action.apply(state);
+                }
+            }
+        }
+    }
+
+    //出價：先在記憶體驗證，再以版本比對更新 auction_state 並寫入 bids（同一交易）
+    public Bid placeBid(Long productId, Long bidderId, String bidderName, BigDecimal amount) {
+        if (bidWriteAheadLog.isEnabled()) {
+            return placeBidLogged(productId, bidderId, bidderName, amount);
+        }
+        return inLane(productId, state -> {
+            boolean reloaded = false;
+            for (int attempt = 1; ; attempt++) {
+                LocalDateTime now = LocalDateTime.now();
+                BidCheck result = check(state, bidderId, amount, now);
+                if (result.getReason() == BidCheck.Reason.ALREADY_HIGHEST && !reloaded) {
+                    // 其他主機可能已有更高出價，重新讀取後再判斷
+                    reloadBidState(state);
+                    reloaded = true;
+                    result = check(state, bidderId, amount, now);
+                }
+                throwIfRejected(result);
+
+                long version = state.version;
+                Bid saved = transactionTemplate.execute(status -> {
+                    if (auctionBidStateRepository.acceptBid(productId, version, amount, bidderId, now) == 0) {
+                        return null;
+                    }
+                    Bid bid = new Bid();
+                    bid.setProductId(productId);
+                    bid.setBidderId(bidderId);
+                    bid.setAmount(amount);
+                    bid.setBidTime(now);
+                    return bidRepository.save(bid);
+                });
+
+                if (saved == null) {
+                    // 其他主機已更新這個競標：重新載入後再驗證一次
+                    if (attempt >= MAX_BID_ATTEMPTS) {
+                        throw new IllegalStateException("出價人數眾多，請重新整理後再試");
+                    }
+                    reloadBidState(state);
+                    reloaded = true;
+                    continue;
+                }
+
+                state.version = version + 1;
+                accept(state, saved, bidderName);
+                return saved;
+            }
+        });
+    }
+
+    //出價日誌模式：驗證後附加到日誌（fsync 完成）即成立，bids 與 auction_state 由日誌批次寫入
+    private Bid placeBidLogged(Long productId, Long bidderId, String bidderName, BigDecimal amount) {
+        return inLane(productId, state -> {
+            LocalDateTime now = LocalDateTime.now();
+            validate(state, bidderId, amount, now);
+
+            Bid bid = new Bid();
+            bid.setProductId(productId);
+            bid.setBidderId(bidderId);
+            bid.setAmount(amount);
+            bid.setBidTime(now);
+            bidWriteAheadLog.append(bid);
+
+            state.version++;
+            accept(state, bid, bidderName);
+            return bid;
+        });
+    }
+
+    private void accept(AuctionState state, Bid bid, String bidderName) {
+        state.highestAmount = bid.getAmount();
+        state.highestBidderId = bid.getBidderId();
+        state.highestBidderName = bidderName;
+        state.bidCount++;
+        state.addRecentBid(bid, bidderName);
+        state.snapshot = state.buildSnapshot();
+        auctionBroadcaster.bidPlaced(state, bid.getBidTime());
+    }
+
+    //出價前預先檢查：只讀競標簿（不進出價通道、不開交易），明顯會失敗的出價直接回絕
+    //讀到的可能是稍舊的狀態，通過後仍會在通道內再驗證一次
+    public BidCheck precheck(Long productId, Long bidderId, BigDecimal amount) {
+        AuctionState state = get(productId);
+        if (state == null) {
+            return BidCheck.reject(BidCheck.Reason.NOT_FOUND);
+        }
+        // 先讀 volatile 的快照，確保看到最近一次出價寫入的欄位
+        if (state.snapshot == null) {
+            return BidCheck.reject(BidCheck.Reason.NOT_AUCTION);
+        }
+        BidCheck result = check(state, bidderId, amount, LocalDateTime.now());
+        // 多台主機時其他主機可能已出更高價，「已是最高出價者」交給出價通道重新讀取後判斷
+        if (result.getReason() == BidCheck.Reason.ALREADY_HIGHEST && !bidWriteAheadLog.isEnabled()) {
+            return BidCheck.ACCEPTED;
+        }
+        return result;
+    }
+
+    private void validate(AuctionState state, Long bidderId, BigDecimal amount, LocalDateTime now) {
+        throwIfRejected(check(state, bidderId, amount, now));
+    }
+
+    private static void throwIfRejected(BidCheck result) {
+        if (result.getReason() == BidCheck.Reason.TOO_LOW) {
+            throw new IllegalArgumentException(result.getMessage());
+        }
+        if (!result.isAccepted()) {
+            throw new IllegalStateException(result.getMessage());
+        }
+    }
+
+    private BidCheck check(AuctionState state, Long bidderId, BigDecimal amount, LocalDateTime now) {
+        if (state.bidEndTime == null) {
+            return BidCheck.reject(BidCheck.Reason.NOT_AUCTION);
+        }
+        if (state.closed || now.isAfter(state.bidEndTime)) {
+            return BidCheck.reject(BidCheck.Reason.ENDED);
+        }
+        if (state.status != Product.ProductStatus.AUCTION) {
+            return BidCheck.reject(BidCheck.Reason.NOT_OPEN);
+        }
+        if (state.sellerId.equals(bidderId)) {
+            return BidCheck.reject(BidCheck.Reason.SELF_BID);
+        }
+
+        //驗證出價金額（最少要比目前最高價多10元）
+        BigDecimal minAmount = state.getNextMinBid();
+        if (amount.compareTo(minAmount) < 0) {
+            return BidCheck.reject(BidCheck.Reason.TOO_LOW, minAmount);
+        }
+
+        // 檢查是否超過直購價
+        if (state.buyNowPrice != null && amount.compareTo(state.buyNowPrice) >= 0) {
+            return BidCheck.reject(BidCheck.Reason.AT_BUY_NOW, state.buyNowPrice);
+        }
+
+        //檢查用戶是否已是最高出價者
+        if (bidderId.equals(state.highestBidderId)) {
+            return BidCheck.reject(BidCheck.Reason.ALREADY_HIGHEST);
+        }
+        return BidCheck.ACCEPTED;
+    }
+
+    //直購成交（需在直購交易內、出價通道內呼叫）
+    void recordBuyNow(Long productId, Long buyerId, BigDecimal price) {
+        auctionBidStateRepository.recordBuyNow(productId, price, buyerId, LocalDateTime.now());
+    }
+
+    //商品資料異動（交易提交後）：捨棄目前狀態，下次存取重新載入
+    public void refresh(Long productId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    retire(productId);
+                }
+            });
+        } else {
+            retire(productId);
+        }
+    }
+
+    private void retire(Long productId) {
+        invalidations.incrementAndGet();
+        AuctionState state = states.get(productId);
+        if (state != null) {
+            discard(productId, state);
+        }
+    }
+
+    // 等目前的出價寫入完成後再移除，避免重新載入時漏掉該筆
+    private void discard(Long productId, AuctionState state) {
+        synchronized (state) {
+            state.retired = true;
+            states.remove(productId, state);
+        }
+    }
+
+    //移出閒置的競標；已結標的只保留短時間供查詢結果
+    @Scheduled(fixedDelayString = "${app.auction.book.sweep-ms:60000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        LocalDateTime nowTime = LocalDateTime.now();
+        int evicted = 0;
+        for (Map.Entry<Long, AuctionState> e : states.entrySet()) {
+            AuctionState state = e.getValue();
+            boolean ended = state.closed || state.status != Product.ProductStatus.AUCTION
+                || nowTime.isAfter(state.bidEndTime);
+            long idleMillis = ended ? endedIdleSeconds * 1000 : idleMinutes * 60_000;
+            if (now - state.lastAccess > idleMillis) {
+                discard(e.getKey(), state);
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            System.out.println("🧹 競標簿移出閒置競標: " + evicted + " 筆");
+        }
+    }
+
+    private AuctionState load(Long productId) {
+        Product product = productRepository.findById(productId).orElse(null);
+        if (product == null) {
+            return null;
+        }
+        AuctionState state = new AuctionState();
+        state.productId = productId;
+        state.sellerId = product.getSellerId();
+        state.status = product.getStatus();
+        state.startPrice = product.getStartPrice() != null ? product.getStartPrice() : BigDecimal.ZERO;
+        state.buyNowPrice = product.getCurrentPrice();
+        state.bidEndTime = product.getBidEndTime();
+
+        if (product.getBidEndTime() != null) {
+            // 日誌中尚未寫入的出價先寫入，讀到的才是最新狀態
+            bidWriteAheadLog.flush();
+            AuctionBidState bidState = loadBidState(productId);
+            List<Bid> recent = bidRepository.findTop10ByProductIdOrderByBidTimeDesc(productId);
+
+            // 最近出價與最高出價者的名稱一次查詢
+            Set<Long> bidderIds = new HashSet<>();
+            recent.forEach(b -> bidderIds.add(b.getBidderId()));
+            if (bidState.getHighestBidderId() != null) {
+                bidderIds.add(bidState.getHighestBidderId());
+            }
+            Map<Long, String> names = new HashMap<>();
+            userRepository.findAllById(bidderIds).forEach(u -> names.put(u.getUserId(), u.getUsername()));
+
+            state.highestAmount = bidState.getHighestBidAmount();
+            state.highestBidderId = bidState.getHighestBidderId();
+            state.highestBidderName = names.get(state.highestBidderId);
+            state.bidCount = bidState.getBidCount();
+            state.version = bidState.getVersion();
+            for (int i = recent.size() - 1; i >= 0; i--) {
+                state.addRecentBid(recent.get(i), names.get(recent.get(i).getBidderId()));
+            }
+            state.snapshot = state.buildSnapshot();
+        }
+        return state;
+    }
+
+    //取得 auction_state（沒有時由 bids 建立；其他主機同時建立時改讀取對方的）
+    private AuctionBidState loadBidState(Long productId) {
+        AuctionBidState bidState = auctionBidStateRepository.findById(productId).orElse(null);
+        if (bidState != null) {
+            return bidState;
+        }
+        AuctionBidState created = new AuctionBidState();
+        created.setProductId(productId);
+        Optional<Bid> highest = bidRepository.findHighestBidByProductId(productId);
+        created.setHighestBidAmount(highest.map(Bid::getAmount).orElse(null));
+        created.setHighestBidderId(highest.map(Bid::getBidderId).orElse(null));
+        created.setBidCount(bidRepository.countByProductId(productId));
+        created.setUpdatedAt(LocalDateTime.now());
+        try {
+            return auctionBidStateRepository.saveAndFlush(created);
+        } catch (DataIntegrityViolationException e) {
+            return auctionBidStateRepository.findById(productId).orElseThrow(() -> e);
+        }
+    }
+
+    //出價衝突或以「已是最高出價者」回絕前重新讀取最高價（最近出價清單保留，下次重新載入時更正）
+    private void reloadBidState(AuctionState state) {
+        AuctionBidState bidState = auctionBidStateRepository.findById(state.productId).orElse(null);
+        if (bidState == null) {
+            return;
+        }
+        if (!Objects.equals(state.highestBidderId, bidState.getHighestBidderId())) {
+            state.highestBidderName = bidState.getHighestBidderId() != null
+                ? userRepository.findById(bidState.getHighestBidderId()).map(u -> u.getUsername()).orElse(null)
+                : null;
+        }
+        state.highestAmount = bidState.getHighestBidAmount();
+        state.highestBidderId = bidState.getHighestBidderId();
+        state.bidCount = bidState.getBidCount();
+        state.version = bidState.getVersion();
+        state.snapshot = state.buildSnapshot();
+    }
+
+    static class AuctionState {
+        Long productId;
+        Long sellerId;
+        Product.ProductStatus status;
+        BigDecimal startPrice;
+        BigDecimal buyNowPrice;
+        LocalDateTime bidEndTime;
+
+        BigDecimal highestAmount;
+        Long highestBidderId;
+        String highestBidderName;
+        long bidCount;
+        long version;
+
+        // 最近出價（新的在前，名稱已遮罩）
+        final Deque<Map<String, Object>> recentBids = new ArrayDeque<>();
+        volatile Map<String, Object> snapshot;
+
+        volatile boolean closed;
+        boolean retired;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        BigDecimal getCurrentPrice() {
+            return highestAmount != null ? highestAmount : startPrice;
+        }
+
+        BigDecimal getNextMinBid() {
+            return getCurrentPrice().add(MIN_INCREMENT);
+        }
+
+        void addRecentBid(Bid bid, String bidderName) {
+            Map<String, Object> bidInfo = new HashMap<>();
+            bidInfo.put("amount", bid.getAmount());
+            bidInfo.put("bidTime", bid.getBidTime());
+            bidInfo.put("bidderName", bidderName != null ? AuctionService.maskUsername(bidderName) : "匿名用戶");
+            bidInfo.put("bidderId", bid.getBidderId());
+            recentBids.addFirst(Collections.unmodifiableMap(bidInfo));
+            if (recentBids.size() > RECENT_BIDS) {
+                recentBids.removeLast();
+            }
+        }
+
+        //不含與查詢時間相關的欄位（isEnded、statusMessage）
+        Map<String, Object> buildSnapshot() {
+            Map<String, Object> result = new HashMap<>();
+            result.put("isAuction", true);
+            result.put("productId", productId);
+            result.put("startPrice", startPrice);
+            result.put("currentPrice", getCurrentPrice());
+            result.put("directBuyPrice", buyNowPrice);
+            result.put("endTime", bidEndTime);
+            result.put("bidCount", bidCount);
+            if (highestBidderId != null) {
+                result.put("currentWinner", highestBidderName != null
+                    ? AuctionService.maskUsername(highestBidderName) : "匿名用戶");
+                result.put("currentWinnerId", highestBidderId);
+            } else {
+                result.put("currentWinner", null);
+                result.put("currentWinnerId", null);
+            }
+            result.put("recentBids", List.copyOf(recentBids));
+            result.put("nextMinBid", getNextMinBid());
+            return Collections.unmodifiableMap(result);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//競標即時推播：/topic/auction/{productId}
+//出價在短時間窗內合併，每個商品每窗只送最新一筆；直購與結標立即送出
+@Service
+public class AuctionBroadcaster {
+
+    public static final String TYPE_BID = "BID";
+    public static final String TYPE_BUY_NOW = "BUY_NOW";
+    public static final String TYPE_CLOSED = "CLOSED";
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    private final Map<Long, Map<String, Object>> pendingBids = new ConcurrentHashMap<>();
+
+    //在競標簿出價通道內呼叫，後到的出價覆蓋同窗內較早的
+    void bidPlaced(AuctionBook.AuctionState state, LocalDateTime bidTime) {
+        Map<String, Object> delta = delta(TYPE_BID, state);
+        delta.put("bidTime", bidTime);
+        pendingBids.put(state.productId, delta);
+    }
+
+    //直購成功（交易提交後送出）
+    public void buyNow(Long productId, String buyerName, BigDecimal price, long bidCount) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", TYPE_BUY_NOW);
+        event.put("productId", productId);
+        event.put("currentPrice", price);
+        event.put("bidder", AuctionService.maskUsername(buyerName));
+        event.put("bidCount", bidCount);
+        event.put("isEnded", true);
+        afterCommit(() -> sendNow(productId, event));
+    }
+
+    //競標結束（交易提交後送出）
+    public void closed(Long productId, BigDecimal finalPrice, String winnerName, long bidCount) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", TYPE_CLOSED);
+        event.put("productId", productId);
+        event.put("currentPrice", finalPrice);
+        event.put("bidder", winnerName != null ? AuctionService.maskUsername(winnerName) : null);
+        event.put("bidCount", bidCount);
+        event.put("isEnded", true);
+        afterCommit(() -> sendNow(productId, event));
+    }
+
+    @Scheduled(fixedDelayString = "${app.auction.broadcast.interval-ms:200}")
+    public synchronized void flush() {
+        for (Long productId : pendingBids.keySet()) {
+            Map<String, Object> delta = pendingBids.remove(productId);
+            if (delta != null) {
+                send(productId, delta);
+            }
+        }
+    }
+
+    // 先送出該商品尚未送出的出價，確保事件順序
+    private synchronized void sendNow(Long productId, Map<String, Object> event) {
+        Map<String, Object> pending = pendingBids.remove(productId);
+        if (pending != null) {
+            send(productId, pending);
+        }
+        send(productId, event);
+    }
+
+    private void send(Long productId, Map<String, Object> payload) {
+        try {
+            messagingTemplate.convertAndSend("/topic/auction/" + productId, payload);
+        } catch (Exception e) {
+            System.err.println("⚠️ 競標推播失敗: 商品ID " + productId + ", 錯誤: " + e.getMessage());
+        }
+    }
+
+    private Map<String, Object> delta(String type, AuctionBook.AuctionState state) {
+        Map<String, Object> delta = new LinkedHashMap<>();
+        delta.put("type", type);
+        delta.put("productId", state.productId);
+        delta.put("currentPrice", state.getCurrentPrice());
+        delta.put("bidder", AuctionService.maskUsername(state.highestBidderName));
+        delta.put("bidderId", state.highestBidderId);
+        delta.put("bidCount", state.bidCount);
+        delta.put("nextMinBid", state.getNextMinBid());
+        return delta;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
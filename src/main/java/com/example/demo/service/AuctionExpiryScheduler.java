@@ -0,0 +1,113 @@
+package com.example.demo.service;
+
+import com.example.demo.model.entity.Product;
+import com.example.demo.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+//競標到期排程：每個競標依 bidEndTime 排入 DelayQueue，到期由專屬執行緒結標
+//商品修改或直購後舊的排程不移除，到期時重新檢查商品狀態與結束時間即可略過
+@Service
+public class AuctionExpiryScheduler {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private AuctionService auctionService;
+
+    private final DelayQueue<Expiry> queue = new DelayQueue<>();
+    private volatile Thread worker;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        int loaded = 0;
+        for (Product product : productRepository.findByStatus(Product.ProductStatus.AUCTION)) {
+            if (product.getBidEndTime() != null) {
+                queue.put(new Expiry(product.getProductId(), product.getBidEndTime()));
+                loaded++;
+            }
+        }
+
+        worker = new Thread(this::run, "auction-expiry");
+        worker.setDaemon(true);
+        worker.start();
+        System.out.println("⏰ 競標到期排程啟動，載入 " + loaded + " 個進行中競標");
+    }
+
+    @PreDestroy
+    public void stop() {
+        Thread t = worker;
+        worker = null;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    //競標建立或修改結束時間後排入（交易提交後）
+    public void schedule(Product product) {
+        if (product.getStatus() != Product.ProductStatus.AUCTION || product.getBidEndTime() == null) {
+            return;
+        }
+        Expiry expiry = new Expiry(product.getProductId(), product.getBidEndTime());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    queue.put(expiry);
+                }
+            });
+        } else {
+            queue.put(expiry);
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    private void run() {
+        while (worker != null) {
+            try {
+                Expiry expiry = queue.take();
+                auctionService.closeAuction(expiry.productId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("❌ 競標到期處理失敗: " + e.getMessage());
+            }
+        }
+    }
+
+    private static class Expiry implements Delayed {
+        final Long productId;
+        final long dueAtMillis;
+
+        Expiry(Long productId, LocalDateTime bidEndTime) {
+            this.productId = productId;
+            this.dueAtMillis = bidEndTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAtMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueAtMillis, ((Expiry) other).dueAtMillis);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.demo.service;
 
+import com.example.demo.model.dto.BidCheck;
 import com.example.demo.model.dto.BidDTO;
+import com.example.demo.model.dto.MyBidRowDTO;
 import com.example.demo.model.entity.Bid;
 import com.example.demo.model.entity.Product;
 import com.example.demo.model.entity.User;
@@ -8,6 +10,8 @@ import com.example.demo.repository.BidRepository;
 import com.example.demo.repository.ProductRepository;
 import com.example.demo.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,6 +23,8 @@ import java.util.stream.Collectors;
 @Service
 public class AuctionService {
     
+    private static final int MAX_PAGE_SIZE = 100;
+    
     @Autowired
     private BidRepository bidRepository;
     
@@ -28,82 +34,48 @@ public class AuctionService {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private ProductCacheService productCacheService;
     
-    @Transactional
-    public BidDTO placeBid(Long productId, String username, BigDecimal amount) {
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+    
+    @Autowired
+    private CategoryFacetService categoryFacetService;
+    
+    @Autowired
+    private AuctionBook auctionBook;
+    
+    @Autowired
+    private AuctionBroadcaster auctionBroadcaster;
+    
+    @Autowired
+    private AuctionSettlementService auctionSettlementService;
+    
+    
+    //出價預先檢查（只讀競標簿）：金額不足、已結標、賣家自己出價等直接回絕，不查資料庫
+    public BidCheck precheckBid(Long productId, Long userId, BigDecimal amount) {
+        return auctionBook.precheck(productId, userId, amount);
+    }
+    
+    //出價不包在交易內：bids 寫入在商品出價通道內即提交，之後才更新競標簿
+    public BidDTO placeBid(Long productId, Long userId, String username, BigDecimal amount) {
         try {
             
-            Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new IllegalArgumentException("商品不存在"));
-            
-            if (product.getBidEndTime() == null) {
-                throw new IllegalStateException("此商品非競標商品");
-            }
-            
-            if (LocalDateTime.now().isAfter(product.getBidEndTime())) {
-                throw new IllegalStateException("競標已結束");
-            }
-            
-            if (product.getStatus() != Product.ProductStatus.AUCTION) {
-                throw new IllegalStateException("商品狀態不允許競標");
-            }
-            
-            User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new IllegalArgumentException("用戶不存在"));
-            
-            if (product.getSellerId().equals(user.getUserId())) {
-                throw new IllegalStateException("賣家不能對自己的商品出價");
-            }
-            
-            Optional<Bid> currentHighestBid = bidRepository.findHighestBidByProductId(productId);
-            BigDecimal currentHighestAmount = currentHighestBid
-                .map(Bid::getAmount)
-                .orElse(product.getStartPrice() != null ? product.getStartPrice() : BigDecimal.ZERO);
-            
-            //驗證出價金額（最少要比目前最高價多10元）
-            BigDecimal minAmount = currentHighestAmount.add(new BigDecimal("10"));
-            if (amount.compareTo(minAmount) < 0) {
-                throw new IllegalArgumentException(
-                    String.format("出價必須至少為 NT$ %,d", minAmount.intValue())
-                );
-            }
-            
-            // 檢查是否超過直購價
-            if (product.getCurrentPrice() != null && 
-                amount.compareTo(product.getCurrentPrice()) >= 0) {
-                throw new IllegalStateException(
-                    String.format("出價不能等於或超過直購價 NT$ %,d，請使用直購功能", 
-                                product.getCurrentPrice().intValue())
-                );
-            }
-            
-            //檢查用戶是否已是最高出價者
-            if (currentHighestBid.isPresent() && 
-                currentHighestBid.get().getBidderId().equals(user.getUserId())) {
-                throw new IllegalStateException("您已經是目前最高出價者");
-            }
-            
-           
-            Bid bid = new Bid();
-            bid.setProductId(productId);
-            bid.setBidderId(user.getUserId());
-            bid.setAmount(amount);
-            bid.setBidTime(LocalDateTime.now());
-            
-            Bid savedBid = bidRepository.save(bid);
+            Bid savedBid = auctionBook.placeBid(productId, userId, username, amount);
             
            
             BidDTO result = new BidDTO();
             result.setProductId(productId);
-            result.setBidderId(user.getUserId());
-            result.setBidderName(user.getUsername());
+            result.setBidderId(userId);
+            result.setBidderName(username);
             result.setAmount(amount);
             result.setBidTime(savedBid.getBidTime());
             result.setIsNewHighest(true);
             result.setMessage("出價成功！您現在是最高出價者");
             
             System.out.println(String.format("✅ 新出價: %s 對商品 %d 出價 NT$ %,d", 
-                                            user.getUsername(), productId, amount.intValue()));
+                                            username, productId, amount.intValue()));
             
             return result;
             
@@ -119,81 +91,34 @@ public class AuctionService {
    
     public Map<String, Object> getAuctionInfo(Long productId) {
         try {
-            Product product = productRepository.findById(productId).orElse(null);
-            
-
-            if (product == null || product.getBidEndTime() == null) {
+            Map<String, Object> snapshot = auctionBook.snapshot(productId);
+            if (snapshot == null) {
                 return Map.of("isAuction", false);
             }
             
-            Optional<Bid> highestBid = bidRepository.findHighestBidByProductId(productId);
-            List<Bid> recentBids = bidRepository.findTop10ByProductIdOrderByBidTimeDesc(productId);
-            long bidCount = bidRepository.countByProductId(productId);
+            Map<String, Object> result = new HashMap<>(snapshot);
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime endTime = (LocalDateTime) snapshot.get("endTime");
             
             //判斷競標是否結束
-            boolean isEnded = LocalDateTime.now().isAfter(product.getBidEndTime());
-            
-            //取得目前最高價
-            BigDecimal currentPrice = highestBid
-                .map(Bid::getAmount)
-                .orElse(product.getStartPrice() != null ? product.getStartPrice() : BigDecimal.ZERO);
-            
-            Map<String, Object> result = new HashMap<>();
-            result.put("isAuction", true);
-            result.put("productId", productId);
-            result.put("startPrice", product.getStartPrice());
-            result.put("currentPrice", currentPrice);
-            result.put("directBuyPrice", product.getCurrentPrice());
-            result.put("endTime", product.getBidEndTime());
+            boolean isEnded = now.isAfter(endTime);
             result.put("isEnded", isEnded);
-            result.put("bidCount", bidCount);
-            
-           
-            if (highestBid.isPresent()) {
-                User winner = userRepository.findById(highestBid.get().getBidderId()).orElse(null);
-                result.put("currentWinner", winner != null ? winner.getUsername() : "匿名用戶");
-                result.put("currentWinnerId", highestBid.get().getBidderId());
-            } else {
-                result.put("currentWinner", null);
-                result.put("currentWinnerId", null);
-            }
-            
-            
-            List<Map<String, Object>> bidHistory = recentBids.stream()
-                .map(bid -> {
-                    User bidder = userRepository.findById(bid.getBidderId()).orElse(null);
-                    Map<String, Object> bidInfo = new HashMap<>();
-                    bidInfo.put("amount", bid.getAmount());
-                    bidInfo.put("bidTime", bid.getBidTime());
-                    bidInfo.put("bidderName", bidder != null ? 
-                        maskUsername(bidder.getUsername()) : "匿名用戶");
-                    bidInfo.put("bidderId", bid.getBidderId());
-                    return bidInfo;
-                })
-                .collect(Collectors.toList());
-            
-            result.put("recentBids", bidHistory);
-            
-            BigDecimal nextMinBid = currentPrice.add(new BigDecimal("10"));
-            result.put("nextMinBid", nextMinBid);
             
             if (isEnded) {
-                if (highestBid.isPresent()) {
+                if (snapshot.get("currentWinnerId") != null) {
                     result.put("statusMessage", "競標已結束，得標者為: " + 
                         (result.get("currentWinner")));
                 } else {
                     result.put("statusMessage", "競標已結束，無人出價");
                 }
             } else {
-                long hoursLeft = java.time.Duration.between(
-                    LocalDateTime.now(), product.getBidEndTime()).toHours();
+                long hoursLeft = java.time.Duration.between(now, endTime).toHours();
                 if (hoursLeft > 24) {
                     result.put("statusMessage", "競標進行中，剩餘 " + (hoursLeft / 24) + " 天");
                 } else if (hoursLeft > 0) {
                     result.put("statusMessage", "競標進行中，剩餘 " + hoursLeft + " 小時");
                 } else {
-                    long minutesLeft = java.time.Duration.between(
-                        LocalDateTime.now(), product.getBidEndTime()).toMinutes();
+                    long minutesLeft = java.time.Duration.between(now, endTime).toMinutes();
                     result.put("statusMessage", "競標即將結束，剩餘 " + Math.max(0, minutesLeft) + " 分鐘");
                 }
             }
@@ -238,6 +163,21 @@ public class AuctionService {
                 throw new IllegalStateException("賣家不能直購自己的商品");
             }
             
+            //在出價通道內結束競標，之後的出價會被拒絕；交易未提交則重新載入
+            long bidCount = auctionBook.inLane(productId, state -> {
+                if (state.closed) {
+                    throw new IllegalStateException("競標已結束，無法使用直購");
+                }
+                state.closed = true;
+                auctionBook.recordBuyNow(productId, user.getUserId(), product.getCurrentPrice());
+                state.highestAmount = product.getCurrentPrice();
+                state.highestBidderId = user.getUserId();
+                state.highestBidderName = user.getUsername();
+                return ++state.bidCount;
+            });
+            auctionBook.refresh(productId);
+            auctionBroadcaster.buyNow(productId, user.getUsername(), product.getCurrentPrice(), bidCount);
+            
            
             Bid directBuyBid = new Bid();
             directBuyBid.setProductId(productId);
@@ -248,8 +188,12 @@ public class AuctionService {
             
            
             product.setBidEndTime(LocalDateTime.now());
-            product.setStatus(Product.ProductStatus.INACTIVE); 
+            product.setStatus(Product.ProductStatus.AUCTION_ENDED); 
             productRepository.save(product);
+            auctionSettlementService.enqueue(productId, user.getUserId(), product.getCurrentPrice());
+            productCacheService.evictProduct(productId);
+            productSearchIndex.remove(productId);
+            categoryFacetService.untrack(productId);
             
           
             Map<String, Object> result = new HashMap<>();
@@ -275,35 +219,28 @@ public class AuctionService {
         }
     }
     
+    //到期排程呼叫：單一競標結標（已結標或結束時間已延後則略過）
+    @Transactional
+    public boolean closeAuction(Long productId) {
+        Product product = productRepository.findById(productId).orElse(null);
+        if (product == null || product.getStatus() != Product.ProductStatus.AUCTION ||
+            product.getBidEndTime() == null || LocalDateTime.now().isBefore(product.getBidEndTime())) {
+            return false;
+        }
+        closeExpired(product);
+        return true;
+    }
+    
+    //安全網：補處理排程漏掉的過期競標（走 status + bid_end_time 索引）
+    @Scheduled(fixedDelayString = "${app.auction.expiry-sweep-ms:300000}")
     @Transactional
     public void processExpiredAuctions() {
         try {
-            LocalDateTime now = LocalDateTime.now();
-            
-            
-            List<Product> expiredAuctions = productRepository.findAll().stream()
-                .filter(p -> p.getStatus() == Product.ProductStatus.AUCTION)
-                .filter(p -> p.getBidEndTime() != null && now.isAfter(p.getBidEndTime()))
-                .collect(Collectors.toList());
+            List<Product> expiredAuctions = productRepository.findExpiredAuctions(LocalDateTime.now());
             
             for (Product product : expiredAuctions) {
                 try {
-                    product.setStatus(Product.ProductStatus.INACTIVE);
-                    productRepository.save(product);
-                    
-                    //取得得標者資訊
-                    Optional<Bid> winningBid = bidRepository.findHighestBidByProductId(product.getProductId());
-                    if (winningBid.isPresent()) {
-                        User winner = userRepository.findById(winningBid.get().getBidderId()).orElse(null);
-                        System.out.println(String.format("🏆 競標結束: 商品 %s (ID: %d)，得標者: %s，得標價: NT$ %,d",
-                            product.getName(), product.getProductId(),
-                            winner != null ? winner.getUsername() : "未知用戶",
-                            winningBid.get().getAmount().intValue()));
-                    } else {
-                        System.out.println(String.format("📦 競標結束: 商品 %s (ID: %d)，無人出價",
-                            product.getName(), product.getProductId()));
-                    }
-                    
+                    closeExpired(product);
                 } catch (Exception e) {
                     System.err.println("❌ 處理過期競標失敗: 商品ID " + product.getProductId() + 
                                      ", 錯誤: " + e.getMessage());
@@ -319,54 +256,95 @@ public class AuctionService {
         }
     }
     
-    //取得用戶的競標記錄
-    public List<Map<String, Object>> getUserBids(String username) {
-        try {
-            User user = userRepository.findByUsername(username).orElse(null);
-            if (user == null) {
-                return new ArrayList<>();
+    private void closeExpired(Product product) {
+        Long productId = product.getProductId();
+        product.setStatus(Product.ProductStatus.AUCTION_ENDED);
+        productRepository.save(product);
+        productCacheService.evictProduct(productId);
+        productSearchIndex.remove(productId);
+        categoryFacetService.untrack(productId);
+        
+        //在出價通道內結標並取得得標者資訊
+        AuctionBook.AuctionState result = auctionBook.inLane(productId, state -> {
+            state.closed = true;
+            AuctionBook.AuctionState copy = new AuctionBook.AuctionState();
+            copy.highestAmount = state.highestAmount;
+            copy.highestBidderId = state.highestBidderId;
+            copy.highestBidderName = state.highestBidderName;
+            copy.bidCount = state.bidCount;
+            return copy;
+        });
+        auctionBook.refresh(productId);
+        auctionSettlementService.enqueue(productId, result.highestBidderId, result.highestAmount);
+        
+        if (result.highestAmount != null) {
+            System.out.println(String.format("🏆 競標結束: 商品 %s (ID: %d)，得標者: %s，得標價: NT$ %,d",
+                product.getName(), productId,
+                result.highestBidderName != null ? result.highestBidderName : "未知用戶",
+                result.highestAmount.intValue()));
+            auctionBroadcaster.closed(productId, result.highestAmount, result.highestBidderName, result.bidCount);
+        } else {
+            System.out.println(String.format("📦 競標結束: 商品 %s (ID: %d)，無人出價",
+                product.getName(), productId));
+            auctionBroadcaster.closed(productId, product.getStartPrice(), null, result.bidCount);
+        }
+    }
+    
+    //取得用戶的競標記錄（分頁）：latestOnly 時每個競標只列自己最新的一筆
+    public Map<String, Object> getUserBids(Long userId, boolean latestOnly, Long cursorId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Long cursor = cursorId != null ? cursorId : Long.MAX_VALUE;
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        List<MyBidRowDTO> rows = latestOnly
+            ? bidRepository.findMyLatestBidsPage(userId, cursor, page)
+            : bidRepository.findMyBidsPage(userId, cursor, page);
+        
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        List<Map<String, Object>> bids = new ArrayList<>();
+        for (MyBidRowDTO row : rows) {
+            Map<String, Object> bidInfo = new HashMap<>();
+            bidInfo.put("bidId", row.getBidId());
+            bidInfo.put("productId", row.getProductId());
+            bidInfo.put("productName", row.getProductName() != null ? row.getProductName() : "未知商品");
+            bidInfo.put("amount", row.getAmount());
+            bidInfo.put("bidTime", row.getBidTime());
+            bidInfo.put("highestAmount", row.getHighestAmount());
+            if (row.getMyBidCount() != null) {
+                bidInfo.put("myBidCount", row.getMyBidCount());
             }
             
-            List<Bid> userBids = bidRepository.findByBidderIdOrderByBidTimeDesc(user.getUserId());
-            
-            return userBids.stream()
-                .map(bid -> {
-                    Product product = productRepository.findById(bid.getProductId()).orElse(null);
-                    Map<String, Object> bidInfo = new HashMap<>();
-                    bidInfo.put("bidId", bid.getBidId());
-                    bidInfo.put("productId", bid.getProductId());
-                    bidInfo.put("productName", product != null ? product.getName() : "未知商品");
-                    bidInfo.put("amount", bid.getAmount());
-                    bidInfo.put("bidTime", bid.getBidTime());
-                    
-                    Optional<Bid> highestBid = bidRepository.findHighestBidByProductId(bid.getProductId());
-                    bidInfo.put("isHighest", highestBid.isPresent() && 
-                                           highestBid.get().getBidId().equals(bid.getBidId()));
-                    
-                    if (product != null && product.getBidEndTime() != null) {
-                        boolean isEnded = LocalDateTime.now().isAfter(product.getBidEndTime());
-                        bidInfo.put("auctionEnded", isEnded);
-                        if (isEnded && bidInfo.get("isHighest").equals(true)) {
-                            bidInfo.put("status", "得標");
-                        } else if (isEnded) {
-                            bidInfo.put("status", "未得標");
-                        } else {
-                            bidInfo.put("status", bidInfo.get("isHighest").equals(true) ? "領先中" : "被超越");
-                        }
-                    }
-                    
-                    return bidInfo;
-                })
-                .collect(Collectors.toList());
-                
-        } catch (Exception e) {
-            System.err.println("❌ 取得用戶競標記錄失敗: " + e.getMessage());
-            return new ArrayList<>();
+            // 同一商品的出價金額只會遞增，最高價等於自己這筆即為最高出價
+            boolean isHighest = row.getHighestAmount() != null && row.getAmount().compareTo(row.getHighestAmount()) == 0;
+            bidInfo.put("isHighest", isHighest);
+            
+            if (row.getBidEndTime() != null) {
+                boolean isEnded = now.isAfter(row.getBidEndTime());
+                bidInfo.put("auctionEnded", isEnded);
+                if (isEnded && isHighest) {
+                    bidInfo.put("status", "得標");
+                } else if (isEnded) {
+                    bidInfo.put("status", "未得標");
+                } else {
+                    bidInfo.put("status", isHighest ? "領先中" : "被超越");
+                }
+            }
+            bids.add(bidInfo);
         }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("bids", bids);
+        result.put("hasMore", hasMore);
+        result.put("nextCursorId", hasMore ? rows.get(rows.size() - 1).getBidId() : null);
+        return result;
     }
     
   
-    private String maskUsername(String username) {
+    static String maskUsername(String username) {
         if (username == null || username.length() <= 2) {
             return username;
         }
@@ -386,9 +364,7 @@ public class AuctionService {
             User user = userRepository.findByUsername(username).orElse(null);
             if (user == null) return false;
             
-            Optional<Bid> highestBid = bidRepository.findHighestBidByProductId(productId);
-            return highestBid.isPresent() && 
-                   highestBid.get().getBidderId().equals(user.getUserId());
+            return auctionBook.inLane(productId, state -> user.getUserId().equals(state.highestBidderId));
                    
         } catch (Exception e) {
             return false;
@@ -0,0 +1,227 @@
+package com.example.demo.service;
+
+import com.example.demo.model.entity.AuctionBidState;
+import com.example.demo.model.entity.Order;
+import com.example.demo.model.entity.Product;
+import com.example.demo.model.entity.User;
+import com.example.demo.repository.AuctionBidStateRepository;
+import com.example.demo.repository.ProductRepository;
+import com.example.demo.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+//競標結算：結標（到期或直購）後排入佇列，定時整批在同一交易內建立得標訂單
+//商品狀態 AUCTION_ENDED 表示待結算，結算後有得標者為 SOLD、無人出價為 EXPIRED
+//逐筆重試仍失敗的結算延後重新排入（間隔逐次加倍，上限 app.auction.settlement-max-backoff-ms）
+@Service
+public class AuctionSettlementService {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private AuctionBidStateRepository auctionBidStateRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private ProductCacheService productCacheService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.auction.settlement-batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.auction.settlement-retry-ms:5000}")
+    private long retryMillis;
+
+    @Value("${app.auction.settlement-max-backoff-ms:600000}")
+    private long maxBackoffMillis;
+
+    private final Queue<Settlement> queue = new ConcurrentLinkedQueue<>();
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    //重啟後補上尚未結算的競標
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        List<Product> pending = productRepository.findByStatus(Product.ProductStatus.AUCTION_ENDED);
+        for (Product product : pending) {
+            AuctionBidState state = auctionBidStateRepository.findById(product.getProductId()).orElse(null);
+            queue.add(new Settlement(product.getProductId(),
+                state != null ? state.getHighestBidderId() : null,
+                state != null ? state.getHighestBidAmount() : null));
+        }
+        if (!pending.isEmpty()) {
+            System.out.println("🔁 待結算競標: " + pending.size() + " 筆");
+        }
+    }
+
+    //結標交易提交後排入結算
+    public void enqueue(Long productId, Long winnerId, BigDecimal amount) {
+        Settlement settlement = new Settlement(productId, winnerId, amount);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    queue.add(settlement);
+                }
+            });
+        } else {
+            queue.add(settlement);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.auction.settlement-interval-ms:1000}")
+    public void drain() {
+        long now = System.currentTimeMillis();
+        List<Settlement> deferred = new ArrayList<>();
+        try {
+            drain(now, deferred);
+        } finally {
+            queue.addAll(deferred);
+        }
+    }
+
+    private void drain(long now, List<Settlement> deferred) {
+        while (!queue.isEmpty()) {
+            List<Settlement> batch = new ArrayList<>();
+            Settlement next;
+            while (batch.size() < batchSize && (next = queue.poll()) != null) {
+                // 還沒到重試時間的先放一邊
+                if (next.retryAt > now) {
+                    deferred.add(next);
+                } else {
+                    batch.add(next);
+                }
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> settleBatch(batch));
+            } catch (Exception e) {
+                // 整批失敗時逐筆重試，避免單筆資料問題卡住整批
+                System.err.println("⚠️ 競標整批結算失敗，改為逐筆處理: " + e.getMessage());
+                for (Settlement settlement : batch) {
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> settleBatch(List.of(settlement)));
+                    } catch (Exception ex) {
+                        settlement.attempts++;
+                        long backoff = Math.min(maxBackoffMillis, retryMillis << Math.min(settlement.attempts - 1, 20));
+                        settlement.retryAt = now + backoff;
+                        deferred.add(settlement);
+                        System.err.println("❌ 競標結算失敗: 商品ID " + settlement.productId + ", 第 " + settlement.attempts +
+                                           " 次, " + backoff / 1000 + " 秒後重試, 錯誤: " + ex.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    //得標通知寫入郵件佇列，與訂單同一交易
+    private void settleBatch(List<Settlement> batch) {
+        Set<Long> productIds = batch.stream().map(s -> s.productId).collect(Collectors.toSet());
+        Map<Long, Product> products = productRepository.findAllById(productIds).stream()
+            .collect(Collectors.toMap(Product::getProductId, Function.identity()));
+
+        Set<Long> userIds = new HashSet<>();
+        for (Settlement s : batch) {
+            Product product = products.get(s.productId);
+            if (product != null) {
+                userIds.add(product.getSellerId());
+            }
+            if (s.winnerId != null) {
+                userIds.add(s.winnerId);
+            }
+        }
+        Map<Long, User> users = userRepository.findAllById(userIds).stream()
+            .collect(Collectors.toMap(User::getUserId, Function.identity()));
+
+        for (Settlement s : batch) {
+            Product product = products.get(s.productId);
+            // 已結算過（或狀態被改動）則略過
+            if (product == null || product.getStatus() != Product.ProductStatus.AUCTION_ENDED) {
+                continue;
+            }
+
+            User winner = s.winnerId != null ? users.get(s.winnerId) : null;
+            if (winner == null) {
+                product.setStatus(Product.ProductStatus.EXPIRED);
+                productRepository.save(product);
+                productCacheService.evictProduct(product.getProductId());
+                System.out.println("📦 競標結算: 商品 " + product.getProductId() + " 無人得標");
+                continue;
+            }
+
+            Order order = orderService.createAuctionOrder(product, winner, s.amount);
+            product.setStatus(Product.ProductStatus.SOLD);
+            if (product.getStockQuantity() != null && product.getStockQuantity() > 0) {
+                product.setStockQuantity(product.getStockQuantity() - 1);
+            }
+            productRepository.save(product);
+            productRepository.refreshSkuAggregates(product.getProductId());
+            productCacheService.evictProduct(product.getProductId());
+
+            User seller = users.get(product.getSellerId());
+            try {
+                if (winner.isEmailVerified()) {
+                    emailService.sendWinningNotification(winner, product, s.amount);
+                }
+                if (seller != null && seller.isEmailVerified()) {
+                    emailService.sendNewOrderNotification(seller, winner, product, 1, order);
+                }
+            } catch (Exception e) {
+                System.err.println("⚠️ 建立得標通知失敗: " + e.getMessage());
+            }
+            System.out.println(String.format("🏆 競標結算: 商品 %d 由 %s 以 NT$ %,d 得標，訂單 %d",
+                product.getProductId(), winner.getUsername(), s.amount.intValue(), order.getOrderId()));
+        }
+    }
+
+    public int pendingCount() {
+        return queue.size();
+    }
+
+    private static class Settlement {
+        final Long productId;
+        final Long winnerId;
+        final BigDecimal amount;
+        int attempts;
+        long retryAt;
+
+        Settlement(Long productId, Long winnerId, BigDecimal amount) {
+            this.productId = productId;
+            this.winnerId = winnerId;
+            this.amount = amount;
+        }
+    }
+}
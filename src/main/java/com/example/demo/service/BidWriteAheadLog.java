@@ -0,0 +1,387 @@
+package com.example.demo.service;
+
+import com.example.demo.model.entity.Bid;
+import com.example.demo.model.entity.BidWalCheckpoint;
+import com.example.demo.repository.BidWalCheckpointRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+//出價寫入日誌（app.auction.wal.enabled 開啟時使用）：出價先附加到本機日誌並 fsync 後即回應，
+//背景每隔幾毫秒把累積的出價以 JDBC 批次寫入 bids 並更新 auction_state；同時到達的出價共用一次 fsync
+//已寫入的最後序號與該批資料同一交易記錄在 bid_wal_checkpoint，重啟時重播之後的項目
+//整批寫入失敗時改為逐筆寫入；資料本身無法寫入（非暫時性錯誤）且重試數次仍失敗的移到 bid_wal_dead_letter，
+//鎖等待逾時、死結等暫時性錯誤則留在佇列下一輪重試；移到 dead letter 時通知競標簿重新載入該商品
+//寫入資料庫由專用執行緒定時執行，不佔用共用的排程執行緒
+//此模式下最高價以本機競標簿為準，適用於單台主機處理出價的部署
+@Service
+public class BidWriteAheadLog {
+
+    private static final String INSERT_BID =
+        "INSERT INTO bids (product_id, bidder_id, amount, bid_time) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_STATE =
+        "UPDATE auction_state SET highest_bid_amount = ?, highest_bidder_id = ?, bid_count = bid_count + ?, " +
+        "version = version + ?, updated_at = ? " +
+        "WHERE product_id = ? AND (highest_bid_amount IS NULL OR highest_bid_amount < ?)";
+    private static final String UPDATE_CHECKPOINT =
+        "UPDATE bid_wal_checkpoint SET last_sequence = ?, updated_at = ? WHERE id = 1";
+    private static final String INSERT_CHECKPOINT =
+        "INSERT INTO bid_wal_checkpoint (id, last_sequence, updated_at) VALUES (1, ?, ?)";
+    private static final String INSERT_DEAD_LETTER =
+        "INSERT INTO bid_wal_dead_letter (wal_sequence, product_id, bidder_id, entry, error, created_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?)";
+    private static final int MAX_ERROR_LENGTH = 500;
+    static final int MAX_WRITE_ATTEMPTS = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BidWalCheckpointRepository bidWalCheckpointRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.auction.wal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.auction.wal.file:./data/bids.wal}")
+    private String file;
+
+    @Value("${app.auction.wal.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.auction.wal.flush-ms:5}")
+    private long flushMs;
+
+    private TransactionTemplate transactionTemplate;
+    private FileChannel channel;
+    private ScheduledExecutorService flusher;
+    private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+    private final Object syncLock = new Object();
+    private final Object flushLock = new Object();
+    private volatile Consumer<Long> deadLetterListener;
+
+    private long lastSequence;
+    // 累計寫入與已 fsync 的位元組數（不因截斷歸零）
+    private long appendedBytes;
+    private volatile long syncedBytes;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //出價移到 dead letter 後呼叫（參數為商品 ID），讓記憶體中的競標狀態與資料庫一致
+    void onDeadLetter(Consumer<Long> listener) {
+        this.deadLetterListener = listener;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        Path path = Paths.get(file);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+        replay(path);
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bid-wal-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                System.err.println("❌ 出價日誌排程寫入失敗: " + e.getMessage());
+            }
+        }, flushMs, flushMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        channel.close();
+    }
+
+    //附加出價並等待 fsync 完成（在競標簿出價通道內呼叫）
+    public void append(Bid bid) {
+        long end;
+        synchronized (this) {
+            Entry entry = new Entry(++lastSequence, bid.getProductId(), bid.getBidderId(), bid.getAmount(), bid.getBidTime());
+            ByteBuffer line = ByteBuffer.wrap(entry.toLine().getBytes(StandardCharsets.UTF_8));
+            try {
+                while (line.hasRemaining()) {
+                    appendedBytes += channel.write(line);
+                }
+            } catch (IOException e) {
+                lastSequence--;
+                throw new UncheckedIOException("出價日誌寫入失敗", e);
+            }
+            end = appendedBytes;
+            pending.add(entry);
+        }
+        sync(end);
+    }
+
+    //同時等待中的出價由第一個進來的執行緒一起 fsync
+    private void sync(long end) {
+        if (syncedBytes >= end) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedBytes >= end) {
+                return;
+            }
+            long target;
+            synchronized (this) {
+                target = appendedBytes;
+            }
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("出價日誌同步失敗", e);
+            }
+            syncedBytes = target;
+        }
+    }
+
+    //寫入資料庫期間不擋新的出價附加
+    public void flush() {
+        if (channel == null) {
+            return;
+        }
+        synchronized (flushLock) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        long flushed = -1;
+        while (!pending.isEmpty()) {
+            List<Entry> batch = new ArrayList<>();
+            Iterator<Entry> it = pending.iterator();
+            while (batch.size() < batchSize && it.hasNext()) {
+                batch.add(it.next());
+            }
+            int done = writeOrSplit(batch);
+            for (int i = 0; i < done; i++) {
+                pending.poll();
+            }
+            if (done > 0) {
+                flushed = batch.get(done - 1).sequence;
+            }
+            if (done < batch.size()) {
+                // 資料庫無法寫入：其餘保留在佇列中，下一輪重試
+                break;
+            }
+        }
+        if (flushed < 0) {
+            return;
+        }
+        // 全部寫入後截斷日誌（期間有新的附加則留到下一輪）
+        synchronized (this) {
+            if (flushed == lastSequence) {
+                try {
+                    channel.truncate(0);
+                } catch (IOException e) {
+                    System.err.println("⚠️ 出價日誌截斷失敗: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    //整批寫入；失敗時逐筆寫入，單筆失敗時停在該筆留待下一輪重試
+    //非暫時性錯誤累計失敗 MAX_WRITE_ATTEMPTS 次才移到 dead letter（連 dead letter 都寫不進去則同樣停在該筆）
+    //回傳已處理的筆數
+    private int writeOrSplit(List<Entry> batch) {
+        try {
+            write(batch);
+            return batch.size();
+        } catch (Exception e) {
+            System.err.println("❌ 出價日誌批次寫入失敗，改為逐筆寫入: " + e.getMessage());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Entry entry = batch.get(i);
+            try {
+                write(List.of(entry));
+            } catch (Exception e) {
+                entry.failures++;
+                if (!isPermanent(e) || entry.failures < MAX_WRITE_ATTEMPTS) {
+                    System.err.println("❌ 出價日誌寫入資料庫失敗（第 " + entry.failures + " 次），下一輪重試: " + e.getMessage());
+                    return i;
+                }
+                try {
+                    deadLetter(entry, e);
+                } catch (Exception deadLetterError) {
+                    System.err.println("❌ 出價日誌寫入資料庫失敗，下一輪重試: " + deadLetterError.getMessage());
+                    return i;
+                }
+                Consumer<Long> listener = deadLetterListener;
+                if (listener != null) {
+                    listener.accept(entry.productId);
+                }
+            }
+        }
+        return batch.size();
+    }
+
+    //資料本身無法寫入（例如違反限制）才算；連線失敗等資源錯誤與鎖等待、死結都視為暫時性
+    private static boolean isPermanent(Exception e) {
+        return e instanceof NonTransientDataAccessException
+            && !(e instanceof NonTransientDataAccessResourceException);
+    }
+
+    private void deadLetter(Entry entry, Exception cause) {
+        String error = String.valueOf(cause.getMessage());
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        String message = error;
+        String line = entry.toLine().trim();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(INSERT_DEAD_LETTER, entry.sequence, entry.productId, entry.bidderId, line, message, now);
+            checkpoint(entry.sequence, now);
+        });
+        System.err.println("☠️ 出價無法寫入資料庫，已移到 bid_wal_dead_letter: " + line + " (" + message + ")");
+    }
+
+    //一個交易內：批次寫入 bids、每個商品更新一次 auction_state、記錄序號
+    private void write(List<Entry> batch) {
+        Map<Long, List<Entry>> byProduct = new LinkedHashMap<>();
+        List<Object[]> bids = new ArrayList<>();
+        for (Entry e : batch) {
+            bids.add(new Object[]{e.productId, e.bidderId, e.amount, Timestamp.valueOf(e.bidTime)});
+            byProduct.computeIfAbsent(e.productId, k -> new ArrayList<>()).add(e);
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> states = new ArrayList<>();
+        for (List<Entry> entries : byProduct.values()) {
+            // 同一商品的出價金額遞增，最後一筆即最高價
+            Entry last = entries.get(entries.size() - 1);
+            states.add(new Object[]{last.amount, last.bidderId, entries.size(), entries.size(), now,
+                last.productId, last.amount});
+        }
+        long sequence = batch.get(batch.size() - 1).sequence;
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_BID, bids);
+            jdbcTemplate.batchUpdate(UPDATE_STATE, states);
+            checkpoint(sequence, now);
+        });
+    }
+
+    private void checkpoint(long sequence, Timestamp now) {
+        if (jdbcTemplate.update(UPDATE_CHECKPOINT, sequence, now) == 0) {
+            jdbcTemplate.update(INSERT_CHECKPOINT, sequence, now);
+        }
+    }
+
+    //重啟時把序號大於檢查點的項目寫入資料庫（最後一行若寫到一半則略過）
+    private void replay(Path path) throws IOException {
+        long done = bidWalCheckpointRepository.findById(1).map(BidWalCheckpoint::getLastSequence).orElse(0L);
+        lastSequence = done;
+
+        List<Entry> entries = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            Entry entry = Entry.parse(line);
+            if (entry == null) {
+                continue;
+            }
+            lastSequence = Math.max(lastSequence, entry.sequence);
+            if (entry.sequence > done) {
+                entries.add(entry);
+            }
+        }
+        pending.addAll(entries);
+        for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            drain();
+        }
+        if (!pending.isEmpty()) {
+            throw new IllegalStateException("出價日誌重播失敗，資料庫無法寫入");
+        }
+        channel.truncate(0);
+        channel.force(true);
+        if (!entries.isEmpty()) {
+            System.out.println("🔁 已重播出價日誌: " + entries.size() + " 筆");
+        }
+    }
+
+    private static class Entry {
+        final long sequence;
+        final Long productId;
+        final Long bidderId;
+        final BigDecimal amount;
+        final LocalDateTime bidTime;
+        // 逐筆寫入失敗的次數（只在 flush 執行緒內存取）
+        int failures;
+
+        Entry(long sequence, Long productId, Long bidderId, BigDecimal amount, LocalDateTime bidTime) {
+            this.sequence = sequence;
+            this.productId = productId;
+            this.bidderId = bidderId;
+            this.amount = amount;
+            this.bidTime = bidTime;
+        }
+
+        String toLine() {
+            return sequence + "," + productId + "," + bidderId + "," + amount.toPlainString() + "," + bidTime + "\n";
+        }
+
+        static Entry parse(String line) {
+            String[] parts = line.split(",");
+            if (parts.length != 5) {
+                return null;
+            }
+            try {
+                return new Entry(Long.parseLong(parts[0]), Long.valueOf(parts[1]), Long.valueOf(parts[2]),
+                    new BigDecimal(parts[3]), LocalDateTime.parse(parts[4]));
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.demo.service;
+
+import com.example.demo.model.entity.CartItem;
+import com.example.demo.repository.CartItemRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+//購物車記憶體快取：第一次存取時從 cart_items 載入，讀取直接用記憶體
+//數量修改與刪除先記在購物車上，由背景定時合併寫回（同一項目多次修改只寫最後一次）；新增項目需要 ID，直接寫入
+//閒置超過時間且沒有待寫入的購物車會被移出記憶體
+@Service
+public class CartStore {
+
+    private static final String UPDATE_QUANTITY = "UPDATE cart_items SET quantity = ? WHERE cart_item_id = ?";
+    private static final String DELETE_ITEM = "DELETE FROM cart_items WHERE cart_item_id = ?";
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.cart.idle-minutes:30}")
+    private long idleMinutes;
+
+    private final Map<Long, Cart> carts = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+
+    //在購物車鎖內操作；購物車剛好被移出時重新載入
+    public <T> T withCart(Long userId, Function<Cart, T> action) {
+        while (true) {
+            Cart cart = carts.computeIfAbsent(userId, this::load);
+            synchronized (cart) {
+                if (cart.evicted) {
+                    continue;
+                }
+                cart.lastAccess = LocalDateTime.now();
+                return action.apply(cart);
+            }
+        }
+    }
+
+    //讀取用的複本
+    public List<CartItem> snapshot(Long userId) {
+        return withCart(userId, cart -> copyOf(cart.items.values()));
+    }
+
+    //清空購物車（下單）：資料庫直接刪除，交易提交後移出記憶體
+    public int clear(Long userId) {
+        int deleted = withCart(userId, cart -> cart.items.size());
+        cartItemRepository.deleteByUserId(userId);
+        Runnable evict = () -> {
+            Cart cart = carts.remove(userId);
+            if (cart != null) {
+                synchronized (cart) {
+                    cart.evicted = true;
+                }
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict.run();
+                }
+            });
+        } else {
+            evict.run();
+        }
+        return deleted;
+    }
+
+    @Scheduled(fixedDelayString = "${app.cart.flush-ms:500}")
+    public void flush() {
+        Map<Cart, Map<Long, Integer>> batch = new HashMap<>();
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (Cart cart : carts.values()) {
+            synchronized (cart) {
+                if (cart.pending.isEmpty()) {
+                    continue;
+                }
+                for (Map.Entry<Long, Integer> e : cart.pending.entrySet()) {
+                    if (e.getValue() == null) {
+                        deletes.add(new Object[]{e.getKey()});
+                    } else {
+                        updates.add(new Object[]{e.getValue(), e.getKey()});
+                    }
+                }
+                batch.put(cart, new HashMap<>(cart.pending));
+                cart.pending.clear();
+                cart.deleting.putAll(cart.removed);
+                cart.removed.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            boolean written = write(updates, deletes);
+            for (Map.Entry<Cart, Map<Long, Integer>> e : batch.entrySet()) {
+                Cart cart = e.getKey();
+                synchronized (cart) {
+                    if (!written) {
+                        // 寫回失敗：放回待寫入（保留期間內較新的修改），下一輪重試
+                        for (Map.Entry<Long, Integer> p : e.getValue().entrySet()) {
+                            cart.pending.putIfAbsent(p.getKey(), p.getValue());
+                        }
+                        cart.deleting.forEach(cart.removed::putIfAbsent);
+                    }
+                    cart.deleting.clear();
+                }
+            }
+        }
+        evictIdle();
+    }
+
+    private boolean write(List<Object[]> updates, List<Object[]> deletes) {
+        synchronized (writeLock) {
+            try {
+                if (!updates.isEmpty()) {
+                    jdbcTemplate.batchUpdate(UPDATE_QUANTITY, updates);
+                }
+                if (!deletes.isEmpty()) {
+                    jdbcTemplate.batchUpdate(DELETE_ITEM, deletes);
+                }
+                return true;
+            } catch (Exception e) {
+                System.err.println("❌ 購物車寫回失敗，稍後重試: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void evictIdle() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(idleMinutes);
+        for (Cart cart : carts.values()) {
+            synchronized (cart) {
+                if (cart.pending.isEmpty() && cart.lastAccess.isBefore(cutoff)) {
+                    cart.evicted = true;
+                    carts.remove(cart.userId, cart);
+                }
+            }
+        }
+    }
+
+    private Cart load(Long userId) {
+        Cart cart = new Cart(userId);
+        for (CartItem item : cartItemRepository.findByUserId(userId)) {
+            cart.items.put(item.getCartItemId(), item);
+        }
+        return cart;
+    }
+
+    private static List<CartItem> copyOf(Collection<CartItem> items) {
+        List<CartItem> copies = new ArrayList<>();
+        for (CartItem item : items) {
+            copies.add(copyOf(item));
+        }
+        return copies;
+    }
+
+    private static CartItem copyOf(CartItem item) {
+        CartItem copy = new CartItem();
+        copy.setCartItemId(item.getCartItemId());
+        copy.setUserId(item.getUserId());
+        copy.setProductId(item.getProductId());
+        copy.setSkuId(item.getSkuId());
+        copy.setQuantity(item.getQuantity());
+        copy.setAddedTime(item.getAddedTime());
+        return copy;
+    }
+
+    public class Cart {
+        private final Long userId;
+        private final Map<Long, CartItem> items = new LinkedHashMap<>();
+        // cartItemId -> 待寫入數量（null 表示刪除）
+        private final Map<Long, Integer> pending = new HashMap<>();
+        // 已刪除但尚未寫回的項目，同商品/規格再次加入時沿用原本的資料列
+        private final Map<String, CartItem> removed = new HashMap<>();
+        // 正在寫回刪除的項目
+        private final Map<String, CartItem> deleting = new HashMap<>();
+        // 各項目單價（cartItemId -> 單價），異動時計算總計用；商品資料版本不同時作廢
+        private final Map<Long, BigDecimal> prices = new HashMap<>();
+        private long pricesVersion = -1;
+        private LocalDateTime lastAccess = LocalDateTime.now();
+        private boolean evicted;
+
+        Cart(Long userId) {
+            this.userId = userId;
+        }
+
+        public List<CartItem> items() {
+            return copyOf(items.values());
+        }
+
+        public Map<Long, BigDecimal> prices(long version) {
+            return version == pricesVersion ? new HashMap<>(prices) : new HashMap<>();
+        }
+
+        public void cachePrices(long version, Map<Long, BigDecimal> fresh) {
+            if (version < pricesVersion) {
+                return;
+            }
+            if (version > pricesVersion) {
+                prices.clear();
+                pricesVersion = version;
+            }
+            prices.putAll(fresh);
+            prices.keySet().retainAll(items.keySet());
+        }
+
+        public CartItem find(Long productId, Long skuId) {
+            for (CartItem item : items.values()) {
+                if (item.getProductId().equals(productId) && Objects.equals(item.getSkuId(), skuId)) {
+                    return copyOf(item);
+                }
+            }
+            return null;
+        }
+
+        public CartItem get(Long cartItemId) {
+            CartItem item = items.get(cartItemId);
+            return item != null ? copyOf(item) : null;
+        }
+
+        public CartItem add(Long productId, Long skuId, int quantity) {
+            CartItem existing = find(productId, skuId);
+            if (existing != null) {
+                return setQuantity(existing.getCartItemId(), existing.getQuantity() + quantity);
+            }
+            CartItem revived = removed.remove(key(productId, skuId));
+            if (revived != null) {
+                revived.setQuantity(quantity);
+                items.put(revived.getCartItemId(), revived);
+                pending.put(revived.getCartItemId(), quantity);
+                return copyOf(revived);
+            }
+            CartItem old = deleting.remove(key(productId, skuId));
+            if (old != null) {
+                // 舊資料列的刪除可能還沒寫回（flush 取出後、取得 writeLock 前），先直接刪除再新增，避免唯一鍵衝突
+                // 之後 flush 再刪同一筆只會影響 0 列
+                synchronized (writeLock) {
+                    jdbcTemplate.update(DELETE_ITEM, old.getCartItemId());
+                }
+            }
+            CartItem item = new CartItem();
+            item.setUserId(userId);
+            item.setProductId(productId);
+            item.setSkuId(skuId);
+            item.setQuantity(quantity);
+            item.setAddedTime(LocalDateTime.now());
+            item = cartItemRepository.save(item);
+            items.put(item.getCartItemId(), item);
+            return copyOf(item);
+        }
+
+        public CartItem setQuantity(Long cartItemId, int quantity) {
+            CartItem item = items.get(cartItemId);
+            if (item == null) {
+                return null;
+            }
+            item.setQuantity(quantity);
+            pending.put(cartItemId, quantity);
+            return copyOf(item);
+        }
+
+        public boolean remove(Long cartItemId) {
+            CartItem item = items.remove(cartItemId);
+            if (item == null) {
+                return false;
+            }
+            pending.put(cartItemId, null);
+            removed.put(key(item.getProductId(), item.getSkuId()), item);
+            return true;
+        }
+
+        private String key(Long productId, Long skuId) {
+            return productId + ":" + skuId;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.demo.service;
+
+import com.example.demo.model.dto.ProductDTO;
+import com.example.demo.model.entity.Product;
+import com.example.demo.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+//分類與商品狀況的上架商品數，隨商品狀態異動增減
+@Service
+public class CategoryFacetService {
+
+    //沒有分類的商品計入「其他」（也是新增商品時可選的分類），分類商品查詢同樣把它們列在「其他」
+    static final String UNCATEGORIZED = "其他";
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    // 每個上架商品目前計入的分類與狀況，用來在異動時扣回舊值
+    private final Map<Long, Facet> contributions = new HashMap<>();
+    private final Map<String, Map<String, Integer>> counts = new TreeMap<>();
+
+    private volatile Map<String, Object> snapshot;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        contributions.clear();
+        counts.clear();
+        for (ProductDTO p : productRepository.findActiveProducts()) {
+            add(p.getId(), new Facet(p.getCategory(), p.getProductCondition()));
+        }
+        snapshot = null;
+        System.out.println("📂 分類統計重建完成，共 " + contributions.size() + " 筆上架商品");
+    }
+
+    //商品新增/修改/狀態變更（交易提交後才生效）
+    public void track(Product product) {
+        Long productId = product.getProductId();
+        Facet facet = product.getStatus() != null && product.getStatus().isActive()
+            ? new Facet(product.getCategory(), product.getProductCondition())
+            : null;
+        afterCommit(() -> apply(productId, facet));
+    }
+
+    public void untrack(Long productId) {
+        afterCommit(() -> apply(productId, null));
+    }
+
+    //分類樹：{ total, categories: [{ name, count, conditions }], conditions }
+    public Map<String, Object> getTree() {
+        Map<String, Object> current = snapshot;
+        if (current == null) {
+            current = buildSnapshot();
+        }
+        return current;
+    }
+
+    private synchronized Map<String, Object> buildSnapshot() {
+        if (snapshot != null) {
+            return snapshot;
+        }
+        List<Map<String, Object>> categories = new ArrayList<>();
+        Map<String, Integer> allConditions = new TreeMap<>();
+        int total = 0;
+
+        for (Map.Entry<String, Map<String, Integer>> e : counts.entrySet()) {
+            int categoryCount = 0;
+            for (Map.Entry<String, Integer> c : e.getValue().entrySet()) {
+                categoryCount += c.getValue();
+                allConditions.merge(c.getKey(), c.getValue(), Integer::sum);
+            }
+            Map<String, Object> node = new LinkedHashMap<>();
+            node.put("name", e.getKey());
+            node.put("count", categoryCount);
+            node.put("conditions", Collections.unmodifiableMap(new TreeMap<>(e.getValue())));
+            categories.add(Collections.unmodifiableMap(node));
+            total += categoryCount;
+        }
+
+        Map<String, Object> tree = new LinkedHashMap<>();
+        tree.put("total", total);
+        tree.put("categories", Collections.unmodifiableList(categories));
+        tree.put("conditions", Collections.unmodifiableMap(allConditions));
+        snapshot = Collections.unmodifiableMap(tree);
+        return snapshot;
+    }
+
+    private synchronized void apply(Long productId, Facet facet) {
+        Facet old = contributions.remove(productId);
+        if (old != null) {
+            Map<String, Integer> byCondition = counts.get(old.category);
+            if (byCondition != null) {
+                byCondition.computeIfPresent(old.condition, (k, v) -> v > 1 ? v - 1 : null);
+                if (byCondition.isEmpty()) {
+                    counts.remove(old.category);
+                }
+            }
+        }
+        if (facet != null) {
+            add(productId, facet);
+        }
+        snapshot = null;
+    }
+
+    private void add(Long productId, Facet facet) {
+        contributions.put(productId, facet);
+        counts.computeIfAbsent(facet.category, k -> new TreeMap<>()).merge(facet.condition, 1, Integer::sum);
+    }
+
+    private void afterCommit(Runnable update) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    update.run();
+                }
+            });
+        } else {
+            update.run();
+        }
+    }
+
+    private static class Facet {
+        final String category;
+        final String condition;
+
+        Facet(String category, String condition) {
+            this.category = category == null || category.isBlank() ? UNCATEGORIZED : category;
+            this.condition = condition == null || condition.isBlank() ? UNCATEGORIZED : condition;
+        }
+    }
+}
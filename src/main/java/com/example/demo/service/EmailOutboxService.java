@@ -0,0 +1,144 @@
+package com.example.demo.service;
+
+import com.example.demo.model.entity.EmailOutbox;
+import com.example.demo.repository.EmailOutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.internet.MimeMessage;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+//郵件寄送佇列：業務交易只寫入 email_outbox，背景定時取出交給寄送執行緒池
+//取出後不等待寄送完成，由寄送執行緒各自更新狀態；同時寄送中的數量以 batch-size 為上限
+//失敗依次數延後重試（指數退避），超過上限標記為 DEAD
+@Service
+public class EmailOutboxService {
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    @Value("${app.email.from}")
+    private String fromEmail;
+
+    @Value("${app.email.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.email.outbox.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${app.email.outbox.backoff-seconds:30}")
+    private long backoffSeconds;
+
+    @Value("${app.email.outbox.threads:4}")
+    private int threads;
+
+    private ExecutorService senders;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @PostConstruct
+    void init() {
+        AtomicInteger seq = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "email-sender-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        senders.shutdown();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        int reset = emailOutboxRepository.resetSending();
+        if (reset > 0) {
+            System.out.println("🔁 重新排入中斷的郵件: " + reset + " 封");
+        }
+    }
+
+    //排入寄送（加入呼叫端的交易，交易回滾則不寄送）
+    @Transactional
+    public EmailOutbox enqueue(String recipient, String subject, String body) {
+        EmailOutbox mail = new EmailOutbox();
+        mail.setRecipient(recipient);
+        mail.setSubject(subject);
+        mail.setBody(body);
+        return emailOutboxRepository.save(mail);
+    }
+
+    @Scheduled(fixedDelayString = "${app.email.outbox.poll-ms:1000}")
+    public void dispatch() {
+        int capacity = batchSize - inFlight.get();
+        if (capacity <= 0) {
+            return;
+        }
+        List<EmailOutbox> due = emailOutboxRepository.findDue(LocalDateTime.now(), PageRequest.of(0, capacity));
+        if (due.isEmpty()) {
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        if (emailOutboxRepository.claim(due.stream().map(EmailOutbox::getOutboxId).collect(Collectors.toList()), token) == 0) {
+            return;
+        }
+
+        // 只寄送這次實際取到的（其他節點同時取走的略過）
+        for (EmailOutbox mail : emailOutboxRepository.findClaimed(token)) {
+            inFlight.incrementAndGet();
+            senders.execute(() -> {
+                try {
+                    deliver(mail);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    private void deliver(EmailOutbox mail) {
+        try {
+            MimeMessage message = mailSender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+            helper.setTo(mail.getRecipient());
+            helper.setSubject(mail.getSubject());
+            helper.setFrom(fromEmail, "競好購");
+            helper.setText(mail.getBody(), true);
+            mailSender.send(message);
+            emailOutboxRepository.markSent(mail.getOutboxId(), LocalDateTime.now());
+            System.out.println("✅ 郵件已發送至: " + mail.getRecipient() + " (" + mail.getSubject() + ")");
+        } catch (Exception e) {
+            int attempts = mail.getAttempts() + 1;
+            String error = e.getMessage() != null && e.getMessage().length() > 500
+                ? e.getMessage().substring(0, 500) : e.getMessage();
+            if (attempts >= maxAttempts) {
+                emailOutboxRepository.markFailed(mail.getOutboxId(), EmailOutbox.Status.DEAD, LocalDateTime.now(), error);
+                System.err.println("❌ 郵件寄送失敗已達上限: " + mail.getRecipient() + ", 錯誤: " + error);
+            } else {
+                long delay = backoffSeconds << (attempts - 1);
+                emailOutboxRepository.markFailed(mail.getOutboxId(), EmailOutbox.Status.PENDING,
+                    LocalDateTime.now().plusSeconds(delay), error);
+                System.err.println("⚠️ 郵件寄送失敗，" + delay + " 秒後重試: " + mail.getRecipient() + ", 錯誤: " + error);
+            }
+        }
+    }
+}
@@ -7,11 +7,8 @@ import com.example.demo.model.entity.Order;
 import com.example.demo.model.dto.OrderItemDTO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
-import jakarta.mail.internet.MimeMessage;
 import java.math.BigDecimal;
 import java.util.List;
 
@@ -19,22 +16,14 @@ import java.util.List;
 public class EmailService {
     
     @Autowired
-    private JavaMailSender mailSender;
+    private EmailOutboxService emailOutboxService;
     
     @Value("${app.frontend.url:http://localhost:5173}")
     private String frontendUrl;
     
-    @Value("${app.email.from}")
-    private String fromEmail;
-    
     public void sendVerificationEmail(String toEmail, String username, String verificationToken) {
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            helper.setTo(toEmail);
-            helper.setSubject("競好購 - 請驗證您的Email");
-            helper.setFrom(fromEmail, "競好購");
+            String subject = "競好購 - 請驗證您的Email";
             
             String verificationUrl = frontendUrl + "/verify-email/" + verificationToken;
             
@@ -50,9 +39,8 @@ public class EmailService {
                 </div>
                 """, username, verificationUrl);
             
-            helper.setText(htmlContent, true);
-            mailSender.send(message);
-            System.out.println("✅ 驗證郵件已發送至: " + toEmail);
+            emailOutboxService.enqueue(toEmail, subject, htmlContent);
+            System.out.println("✅ 驗證郵件已排入寄送: " + toEmail);
             
         } catch (Exception e) {
             System.err.println("❌ 發送驗證郵件失敗: " + e.getMessage());
@@ -64,12 +52,7 @@ public class EmailService {
 
     public void sendWelcomeEmail(String toEmail, String username) {
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            helper.setTo(toEmail);
-            helper.setSubject("🎉 歡迎加入競好購大家庭！");
-            helper.setFrom(fromEmail, "競好購");
+            String subject = "🎉 歡迎加入競好購大家庭！";
             
             String htmlContent = String.format("""
                 <div style="font-family: Arial, sans-serif; max-width: 600px; margin: 0 auto; border: 1px solid #e0e0e0; border-radius: 8px;">
@@ -109,9 +92,8 @@ public class EmailService {
                 </div>
                 """, username, frontendUrl);
             
-            helper.setText(htmlContent, true);
-            mailSender.send(message);
-            System.out.println("✅ 歡迎郵件已發送至: " + toEmail);
+            emailOutboxService.enqueue(toEmail, subject, htmlContent);
+            System.out.println("✅ 歡迎郵件已排入寄送: " + toEmail);
             
         } catch (Exception e) {
             System.err.println("❌ 發送歡迎郵件失敗: " + e.getMessage());
@@ -122,12 +104,8 @@ public class EmailService {
     public void sendNewOrderNotification(User seller, User buyer, Product product, 
                                        Integer quantity, Order order) {
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            helper.setTo(seller.getEmail());
-            helper.setSubject("🛒 競好購 - 您有新訂單需要處理");
-            helper.setFrom(fromEmail, "競好購");
+            String recipient = seller.getEmail();
+            String subject = "🛒 競好購 - 您有新訂單需要處理";
             
             String orderUrl = frontendUrl + "/seller/orders/" + order.getOrderId();
             
@@ -188,9 +166,8 @@ public class EmailService {
                 orderUrl
             );
             
-            helper.setText(htmlContent, true);
-            mailSender.send(message);
-            System.out.println("✅ 賣家新訂單通知已發送至: " + seller.getEmail());
+            emailOutboxService.enqueue(recipient, subject, htmlContent);
+            System.out.println("✅ 賣家新訂單通知已排入寄送: " + seller.getEmail());
             
         } catch (Exception e) {
             System.err.println("❌ 發送賣家通知失敗: " + e.getMessage());
@@ -202,12 +179,8 @@ public class EmailService {
     //發送買家訂單確認信
     public void sendOrderConfirmation(User buyer, Order order, List<OrderItemDTO> orderItems) {
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            helper.setTo(buyer.getEmail());
-            helper.setSubject("✅ 競好購 - 訂單確認通知");
-            helper.setFrom(fromEmail, "競好購");
+            String recipient = buyer.getEmail();
+            String subject = "✅ 競好購 - 訂單確認通知";
             
             String orderUrl = frontendUrl + "/my-orders/" + order.getOrderId();
             
@@ -301,9 +274,8 @@ public class EmailService {
                 orderUrl
             );
             
-            helper.setText(htmlContent, true);
-            mailSender.send(message);
-            System.out.println("✅ 買家訂單確認信已發送至: " + buyer.getEmail());
+            emailOutboxService.enqueue(recipient, subject, htmlContent);
+            System.out.println("✅ 買家訂單確認信已排入寄送: " + buyer.getEmail());
             
         } catch (Exception e) {
             System.err.println("❌ 發送買家確認信失敗: " + e.getMessage());
@@ -315,12 +287,8 @@ public class EmailService {
     //發送出貨通知（賣家出貨後通知買家）
     public void sendShippingNotification(User buyer, Order order, String trackingNumber) {
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            helper.setTo(buyer.getEmail());
-            helper.setSubject("📦 競好購 - 您的訂單已出貨");
-            helper.setFrom(fromEmail, "競好購");
+            String recipient = buyer.getEmail();
+            String subject = "📦 競好購 - 您的訂單已出貨";
             
             String orderUrl = frontendUrl + "/my-orders/" + order.getOrderId();
             
@@ -377,9 +345,8 @@ public class EmailService {
                 orderUrl
             );
             
-            helper.setText(htmlContent, true);
-            mailSender.send(message);
-            System.out.println("✅ 出貨通知已發送至: " + buyer.getEmail());
+            emailOutboxService.enqueue(recipient, subject, htmlContent);
+            System.out.println("✅ 出貨通知已排入寄送: " + buyer.getEmail());
             
         } catch (Exception e) {
             System.err.println("❌ 發送出貨通知失敗: " + e.getMessage());
@@ -391,12 +358,8 @@ public class EmailService {
     
     public void sendWinningNotification(User winner, Product product, BigDecimal winningAmount) {
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            helper.setTo(winner.getEmail());
-            helper.setSubject("🎉 恭喜您得標！- " + product.getName());
-            helper.setFrom(fromEmail, "競好購");
+            String recipient = winner.getEmail();
+            String subject = "🎉 恭喜您得標！- " + product.getName();
             
             String productUrl = frontendUrl + "/product/" + product.getProductId();
             
@@ -448,9 +411,8 @@ public class EmailService {
                 product.getProductId(), 
                 productUrl);
             
-            helper.setText(htmlContent, true);
-            mailSender.send(message);
-            System.out.println("✅ 得標通知已發送給: " + winner.getEmail());
+            emailOutboxService.enqueue(recipient, subject, htmlContent);
+            System.out.println("✅ 得標通知已排入寄送: " + winner.getEmail());
             
         } catch (Exception e) {
             System.err.println("❌ 發送得標通知失敗: " + e.getMessage());
@@ -460,12 +422,8 @@ public class EmailService {
 
     public void sendAuctionEndReminder(User user, Product product) {
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            helper.setTo(user.getEmail());
-            helper.setSubject("⏰ 競標即將結束 - " + product.getName());
-            helper.setFrom(fromEmail, "競好購");
+            String recipient = user.getEmail();
+            String subject = "⏰ 競標即將結束 - " + product.getName();
             
             String productUrl = frontendUrl + "/product/" + product.getProductId();
             
@@ -503,9 +461,8 @@ public class EmailService {
                 product.getCurrentPrice().toString(), 
                 productUrl);
             
-            helper.setText(htmlContent, true);
-            mailSender.send(message);
-            System.out.println("✅ 競標結束提醒已發送給: " + user.getEmail());
+            emailOutboxService.enqueue(recipient, subject, htmlContent);
+            System.out.println("✅ 競標結束提醒已排入寄送: " + user.getEmail());
         } catch (Exception e) {
             System.err.println("❌ 發送競標結束提醒失敗: " + e.getMessage());
             e.printStackTrace();
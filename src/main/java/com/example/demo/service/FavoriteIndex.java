@@ -0,0 +1,115 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.FavoriteRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//每位用戶收藏的商品 ID 集合（排序好的 long[]，二分搜尋），第一次查詢時從資料庫載入
+//收藏/取消收藏時同步更新；同一用戶的載入與更新透過 ConcurrentHashMap 的單鍵鎖串行
+@Service
+public class FavoriteIndex {
+
+    private static final long[] EMPTY = new long[0];
+
+    @Autowired
+    private FavoriteRepository favoriteRepository;
+
+    @Value("${app.favorites.cache-users:50000}")
+    private int maxUsers;
+
+    private final ConcurrentHashMap<Long, long[]> favorites = new ConcurrentHashMap<>();
+
+    public boolean isFavorited(Long userId, Long productId) {
+        return productId != null && Arrays.binarySearch(load(userId), productId) >= 0;
+    }
+
+    //批次查詢，回傳 商品ID -> 是否收藏
+    public Map<Long, Boolean> statuses(Long userId, Collection<Long> productIds) {
+        long[] ids = load(userId);
+        Map<Long, Boolean> result = new LinkedHashMap<>();
+        for (Long productId : productIds) {
+            if (productId != null) {
+                result.put(productId, Arrays.binarySearch(ids, productId) >= 0);
+            }
+        }
+        return result;
+    }
+
+    public void added(Long userId, Long productId) {
+        afterCommit(() -> favorites.computeIfPresent(userId, (k, ids) -> insert(ids, productId)));
+    }
+
+    public void removed(Long userId, Long productId) {
+        afterCommit(() -> favorites.computeIfPresent(userId, (k, ids) -> delete(ids, productId)));
+    }
+
+    private long[] load(Long userId) {
+        long[] ids = favorites.get(userId);
+        if (ids != null) {
+            return ids;
+        }
+        if (favorites.size() >= maxUsers) {
+            // 超過上限時隨意淘汰一部分，被淘汰的用戶下次查詢重新載入
+            Iterator<Long> it = favorites.keySet().iterator();
+            for (int i = 0; i < maxUsers / 10 + 1 && it.hasNext(); i++) {
+                it.next();
+                it.remove();
+            }
+        }
+        return favorites.computeIfAbsent(userId, k -> {
+            List<Long> productIds = favoriteRepository.findProductIdsByUserId(k);
+            if (productIds.isEmpty()) {
+                return EMPTY;
+            }
+            long[] loaded = new long[productIds.size()];
+            for (int i = 0; i < loaded.length; i++) {
+                loaded[i] = productIds.get(i);
+            }
+            Arrays.sort(loaded);
+            return loaded;
+        });
+    }
+
+    private static long[] insert(long[] ids, long productId) {
+        int pos = Arrays.binarySearch(ids, productId);
+        if (pos >= 0) {
+            return ids;
+        }
+        int at = -pos - 1;
+        long[] next = new long[ids.length + 1];
+        System.arraycopy(ids, 0, next, 0, at);
+        next[at] = productId;
+        System.arraycopy(ids, at, next, at + 1, ids.length - at);
+        return next;
+    }
+
+    private static long[] delete(long[] ids, long productId) {
+        int at = Arrays.binarySearch(ids, productId);
+        if (at < 0) {
+            return ids;
+        }
+        long[] next = new long[ids.length - 1];
+        System.arraycopy(ids, 0, next, 0, at);
+        System.arraycopy(ids, at + 1, next, at, ids.length - at - 1);
+        return next;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
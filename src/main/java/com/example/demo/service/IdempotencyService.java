@@ -0,0 +1,215 @@
+package com.example.demo.service;
+
+import com.example.demo.model.entity.IdempotencyRecord;
+import com.example.demo.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+//Idempotency-Key：同一用戶同一操作的相同 Key 只執行一次
+//完成的回應先放記憶體（有上限），同時寫入資料庫供重啟或記憶體淘汰後查詢；同時送達的重複請求等待第一個執行結果
+@Service
+public class IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 100;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${app.idempotency.wait-seconds:30}")
+    private long waitSeconds;
+
+    private final Map<String, Stored> recent;
+    private final ConcurrentHashMap<String, CompletableFuture<Stored>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyService(@Value("${app.idempotency.cache-size:10000}") int cacheSize) {
+        this.recent = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Stored> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    //沒有帶 Key 時直接執行
+    public ResponseEntity<?> execute(String idempotencyKey, Long userId, String operation,
+                                     Supplier<ResponseEntity<?>> action) {
+        if (idempotencyKey == null || idempotencyKey.trim().isEmpty()) {
+            return action.get();
+        }
+        String key = buildKey(idempotencyKey, userId, operation);
+
+        Stored stored = lookup(key);
+        if (stored != null) {
+            return stored.replay();
+        }
+
+        CompletableFuture<Stored> mine = new CompletableFuture<>();
+        CompletableFuture<Stored> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            return await(running).replay();
+        }
+
+        try {
+            // 取得執行權後再查一次，避免剛好在前一個請求完成時進來
+            stored = lookup(key);
+            if (stored != null) {
+                mine.complete(stored);
+                return stored.replay();
+            }
+
+            ResponseEntity<?> response = action.get();
+            String json = toJson(response.getBody());
+            stored = new Stored(response.getStatusCode().value(), json, LocalDateTime.now());
+            // 5xx 視為暫時性錯誤，不保存，重送時可再執行
+            if (stored.statusCode < 500 && (json != null || response.getBody() == null)) {
+                save(key, stored);
+            }
+            mine.complete(stored);
+            return response;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    //預先檢查回絕時使用：同一個 Key 有執行中的請求就等它的結果，已完成的（記憶體或資料庫）就回放
+    //都沒有時回傳 null，由呼叫端直接回絕且不保存
+    public ResponseEntity<?> replayExisting(String idempotencyKey, Long userId, String operation) {
+        if (idempotencyKey == null || idempotencyKey.trim().isEmpty()) {
+            return null;
+        }
+        String key = buildKey(idempotencyKey, userId, operation);
+        // 執行中的請求先寫入結果才移出 inFlight，這裡查不到時 lookup 一定看得到已保存的結果
+        CompletableFuture<Stored> running = inFlight.get(key);
+        if (running != null) {
+            return await(running).replay();
+        }
+        Stored stored = lookup(key);
+        return stored != null ? stored.replay() : null;
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.purge-ms:3600000}")
+    public void purgeExpired() {
+        LocalDateTime before = LocalDateTime.now().minusHours(ttlHours);
+        synchronized (recent) {
+            recent.values().removeIf(s -> s.createdAt.isBefore(before));
+        }
+        int deleted = idempotencyRecordRepository.deleteByCreatedAtBefore(before);
+        if (deleted > 0) {
+            System.out.println("🧹 清除過期冪等紀錄: " + deleted + " 筆");
+        }
+    }
+
+    private String buildKey(String idempotencyKey, Long userId, String operation) {
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key 長度不可超過 " + MAX_KEY_LENGTH);
+        }
+        return userId + ":" + operation + ":" + idempotencyKey.trim();
+    }
+
+    private Stored lookup(String key) {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(ttlHours);
+        synchronized (recent) {
+            Stored s = recent.get(key);
+            if (s != null && s.createdAt.isAfter(cutoff)) {
+                return s;
+            }
+        }
+        IdempotencyRecord record = idempotencyRecordRepository.findById(key).orElse(null);
+        if (record == null || record.getCreatedAt().isBefore(cutoff)) {
+            return null;
+        }
+        Stored s = new Stored(record.getStatusCode(), record.getResponseBody(), record.getCreatedAt());
+        synchronized (recent) {
+            recent.put(key, s);
+        }
+        return s;
+    }
+
+    private void save(String key, Stored stored) {
+        synchronized (recent) {
+            recent.put(key, stored);
+        }
+        try {
+            idempotencyRecordRepository.insert(key, stored.statusCode, stored.body, stored.createdAt);
+        } catch (DataIntegrityViolationException e) {
+            // 其他節點已寫入同一個 Key，之後的重送以先寫入的結果為準
+            idempotencyRecordRepository.findById(key).ifPresent(record -> {
+                synchronized (recent) {
+                    recent.put(key, new Stored(record.getStatusCode(), record.getResponseBody(), record.getCreatedAt()));
+                }
+            });
+        } catch (Exception e) {
+            System.err.println("⚠️ 寫入冪等紀錄失敗: " + e.getMessage());
+        }
+    }
+
+    private Stored await(CompletableFuture<Stored> running) {
+        try {
+            return running.get(waitSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("請求處理失敗", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("相同請求處理中，請稍後再試");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("相同請求處理中，請稍後再試");
+        }
+    }
+
+    private String toJson(Object body) {
+        try {
+            return body != null ? objectMapper.writeValueAsString(body) : null;
+        } catch (Exception e) {
+            System.err.println("⚠️ 冪等回應序列化失敗: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private class Stored {
+        final int statusCode;
+        final String body;
+        final LocalDateTime createdAt;
+
+        Stored(int statusCode, String body, LocalDateTime createdAt) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.createdAt = createdAt;
+        }
+
+        ResponseEntity<?> replay() {
+            try {
+                Object value = body != null ? objectMapper.readValue(body, Object.class) : null;
+                return ResponseEntity.status(statusCode).header("Idempotent-Replayed", "true").body(value);
+            } catch (Exception e) {
+                throw new IllegalStateException("讀取冪等紀錄失敗", e);
+            }
+        }
+    }
+}
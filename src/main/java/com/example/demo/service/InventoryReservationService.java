@@ -0,0 +1,488 @@
+package com.example.demo.service;
+
+import com.example.demo.model.dto.OrderItemDTO;
+import com.example.demo.model.entity.Product;
+import com.example.demo.model.entity.ProductSku;
+import com.example.demo.repository.InventoryRepository;
+import com.example.demo.repository.ProductRepository;
+import com.example.demo.repository.ProductSkuRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//結帳庫存預留：進入結帳時為每個項目保留庫存一段時間，下單時確認，逾時自動釋放
+//可用量以每個商品/SKU 各自的計數器在記憶體中計算（各自加鎖），定時與資料庫對帳
+//下單交易中的異動記為進行中，交易提交後才移除預留、回滾則還原；對帳只處理期間沒有異動的計數器
+@Service
+public class InventoryReservationService {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductSkuRepository productSkuRepository;
+
+    @Value("${app.checkout.reservation-ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${app.checkout.counter-idle-minutes:30}")
+    private long counterIdleMinutes;
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Reservation> reservations = new ConcurrentHashMap<>();
+    private final Map<Long, String> reservationByUser = new ConcurrentHashMap<>();
+
+    //建立預留（全部項目成功才成立），同一用戶的舊預留會先釋放
+    public Reservation reserve(Long userId, List<OrderItemDTO> items) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("沒有要結帳的商品");
+        }
+        Map<String, Line> lines = new LinkedHashMap<>();
+        for (OrderItemDTO item : items) {
+            if (item.getProductId() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                throw new IllegalArgumentException("商品數量無效");
+            }
+            String key = key(item.getProductId(), item.getSkuId());
+            Line existing = lines.get(key);
+            int quantity = item.getQuantity() + (existing != null ? existing.quantity : 0);
+            lines.put(key, new Line(key, item.getProductId(), item.getSkuId(), quantity));
+        }
+
+        String previous = reservationByUser.get(userId);
+        if (previous != null) {
+            release(previous);
+        }
+
+        loadCounters(lines.values());
+        List<Line> held = new ArrayList<>();
+        for (Line line : lines.values()) {
+            if (!counter(line).reserve(line.quantity)) {
+                for (Line h : held) {
+                    counter(h).release(h.quantity);
+                }
+                throw new IllegalArgumentException("商品庫存不足或已被其他買家保留: " + line.productId);
+            }
+            held.add(line);
+        }
+
+        Reservation reservation = new Reservation(UUID.randomUUID().toString(), userId,
+            new ArrayList<>(lines.values()), LocalDateTime.now().plusSeconds(ttlSeconds));
+        reservations.put(reservation.id, reservation);
+        reservationByUser.put(userId, reservation.id);
+        return reservation;
+    }
+
+    //下單中的預留不釋放（交易結束後才決定）
+    public boolean release(String reservationId) {
+        Reservation reservation = reservations.get(reservationId);
+        if (reservation == null) {
+            return false;
+        }
+        synchronized (reservation) {
+            if (reservation.committing || reservation.released) {
+                return false;
+            }
+            reservation.released = true;
+        }
+        reservations.remove(reservationId, reservation);
+        reservationByUser.remove(reservation.userId, reservation.id);
+        for (Line line : reservation.lines) {
+            Counter counter = counters.get(line.key);
+            if (counter != null) {
+                counter.release(line.quantity);
+            }
+        }
+        return true;
+    }
+
+    public boolean releaseForUser(String reservationId, Long userId) {
+        Reservation reservation = reservations.get(reservationId);
+        if (reservation == null || !reservation.userId.equals(userId)) {
+            return false;
+        }
+        return release(reservationId);
+    }
+
+    //下單時呼叫（需在訂單交易內）：有預留的數量直接轉為售出，其餘數量需扣除他人保留後仍足夠
+    //交易提交後才移除預留；回滾時計數器與預留都還原。資料庫的條件式扣庫存仍是最後防線
+    public void commit(String reservationId, Long userId, List<InventoryRepository.StockChange> changes) {
+        Reservation reservation = reservationId != null ? reservations.get(reservationId) : null;
+        if (reservation != null) {
+            synchronized (reservation) {
+                if (!reservation.userId.equals(userId) || reservation.committing || reservation.released) {
+                    reservation = null;
+                } else {
+                    reservation.committing = true;
+                }
+            }
+        }
+
+        Map<String, Line> reserved = new HashMap<>();
+        if (reservation != null) {
+            for (Line line : reservation.lines) {
+                reserved.put(line.key, line);
+            }
+        }
+
+        List<Line> wanted = new ArrayList<>();
+        for (InventoryRepository.StockChange c : changes) {
+            wanted.add(new Line(key(c.getProductId(), c.getSkuId()), c.getProductId(), c.getSkuId(), c.getQuantity()));
+        }
+        loadCounters(wanted);
+
+        // 交易回滾時依序反向執行
+        List<Runnable> undo = new ArrayList<>();
+        List<Counter> touched = new ArrayList<>();
+        try {
+            for (Line line : wanted) {
+                Counter counter = counter(line);
+                Line held = reserved.remove(line.key);
+                int fromHold = held != null ? Math.min(held.quantity, line.quantity) : 0;
+                int extra = line.quantity - fromHold;
+                if (!counter.sell(fromHold, held != null ? held.quantity - fromHold : 0, extra)) {
+                    throw new IllegalArgumentException("商品庫存不足或已被其他買家保留: " + line.productId);
+                }
+                int unheld = held != null ? held.quantity : 0;
+                touched.add(counter);
+                undo.add(() -> counter.unsell(unheld, line.quantity));
+            }
+            // 預留中沒有用到的項目直接釋放（回滾時再保留回去）
+            for (Line unused : reserved.values()) {
+                Counter counter = counter(unused);
+                counter.release(unused.quantity);
+                undo.add(() -> counter.hold(unused.quantity));
+            }
+        } catch (RuntimeException e) {
+            Collections.reverse(undo);
+            undo.forEach(Runnable::run);
+            touched.forEach(Counter::finish);
+            endCommit(reservation, false);
+            throw e;
+        }
+
+        Reservation committed = reservation;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        Collections.reverse(undo);
+                        undo.forEach(Runnable::run);
+                    }
+                    touched.forEach(Counter::finish);
+                    endCommit(committed, status == STATUS_COMMITTED);
+                }
+            });
+        } else {
+            touched.forEach(Counter::finish);
+            endCommit(committed, true);
+        }
+    }
+
+    private void endCommit(Reservation reservation, boolean committed) {
+        if (reservation == null) {
+            return;
+        }
+        synchronized (reservation) {
+            reservation.committing = false;
+            if (committed) {
+                reservation.released = true;
+            }
+        }
+        if (committed) {
+            reservations.remove(reservation.id, reservation);
+            reservationByUser.remove(reservation.userId, reservation.id);
+        }
+    }
+
+    //取消訂單後回補（交易提交後才加回可用量；提交前先記為進行中，避免對帳重複計入）
+    public void restock(List<InventoryRepository.StockChange> changes) {
+        List<Counter> touched = new ArrayList<>();
+        List<Integer> quantities = new ArrayList<>();
+        for (InventoryRepository.StockChange c : changes) {
+            Counter counter = counters.get(key(c.getProductId(), c.getSkuId()));
+            if (counter != null) {
+                counter.begin();
+                touched.add(counter);
+                quantities.add(c.getQuantity());
+            }
+        }
+        if (touched.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    for (int i = 0; i < touched.size(); i++) {
+                        if (status == STATUS_COMMITTED) {
+                            touched.get(i).restore(quantities.get(i));
+                        }
+                        touched.get(i).finish();
+                    }
+                }
+            });
+        } else {
+            for (int i = 0; i < touched.size(); i++) {
+                touched.get(i).restore(quantities.get(i));
+                touched.get(i).finish();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.checkout.reservation-sweep-ms:5000}")
+    public void releaseExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        int released = 0;
+        for (Reservation reservation : reservations.values()) {
+            if (reservation.expiresAt.isBefore(now) && release(reservation.id)) {
+                released++;
+            }
+        }
+        if (released > 0) {
+            System.out.println("⏳ 釋放逾時庫存預留: " + released + " 筆");
+        }
+    }
+
+    //與資料庫庫存對帳（修正賣家改庫存、其他途徑扣庫存造成的差異），並移出閒置的計數器
+    //讀取資料庫前後計數器有異動或有進行中的下單就略過，下一輪再對
+    @Scheduled(fixedDelayString = "${app.checkout.reconcile-ms:30000}")
+    public void reconcile() {
+        evictIdle();
+        if (counters.isEmpty()) {
+            return;
+        }
+        Map<String, Long> marks = new HashMap<>();
+        List<Line> all = new ArrayList<>();
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            Counter c = e.getValue();
+            long mark = c.quietMark();
+            if (mark >= 0) {
+                marks.put(e.getKey(), mark);
+                all.add(new Line(e.getKey(), c.productId, c.skuId, 0));
+            }
+        }
+        if (all.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> stocks = loadStocks(all);
+        for (Map.Entry<String, Integer> e : stocks.entrySet()) {
+            Counter counter = counters.get(e.getKey());
+            if (counter != null) {
+                counter.reconcile(e.getValue(), marks.get(e.getKey()));
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - counterIdleMinutes * 60_000;
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            Counter counter = e.getValue();
+            if (counter.evictIfIdle(cutoff)) {
+                counters.remove(e.getKey(), counter);
+            }
+        }
+    }
+
+    //一次載入多個計數器（商品與 SKU 各一次查詢）
+    private void loadCounters(Collection<Line> lines) {
+        List<Line> missing = new ArrayList<>();
+        for (Line line : lines) {
+            if (!counters.containsKey(line.key)) {
+                missing.add(line);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> stocks = loadStocks(missing);
+        for (Line line : missing) {
+            Integer stock = stocks.get(line.key);
+            if (stock != null) {
+                counters.putIfAbsent(line.key, new Counter(line.productId, line.skuId, stock));
+            }
+        }
+    }
+
+    //取得計數器（沒有時從資料庫載入；剛好被移出則重新載入）
+    private Counter counter(Line line) {
+        while (true) {
+            Counter counter = counters.get(line.key);
+            if (counter == null) {
+                Integer stock = loadStocks(List.of(line)).get(line.key);
+                if (stock == null) {
+                    throw new IllegalArgumentException(line.skuId != null
+                        ? "商品規格不存在: " + line.skuId : "商品不存在: " + line.productId);
+                }
+                counters.putIfAbsent(line.key, new Counter(line.productId, line.skuId, stock));
+                continue;
+            }
+            if (counter.touch()) {
+                return counter;
+            }
+        }
+    }
+
+    //商品與 SKU 各一次查詢
+    private Map<String, Integer> loadStocks(Collection<Line> lines) {
+        Set<Long> productIds = new HashSet<>();
+        Set<Long> skuIds = new HashSet<>();
+        for (Line line : lines) {
+            if (line.skuId != null) {
+                skuIds.add(line.skuId);
+            } else {
+                productIds.add(line.productId);
+            }
+        }
+        Map<String, Integer> stocks = new HashMap<>();
+        if (!productIds.isEmpty()) {
+            for (Product p : productRepository.findAllById(productIds)) {
+                stocks.put(key(p.getProductId(), null), p.getStockQuantity() != null ? p.getStockQuantity() : 0);
+            }
+        }
+        if (!skuIds.isEmpty()) {
+            for (ProductSku s : productSkuRepository.findAllById(skuIds)) {
+                stocks.put(key(s.getProductId(), s.getSkuId()), s.getStock() != null ? s.getStock() : 0);
+            }
+        }
+        return stocks;
+    }
+
+    private static String key(Long productId, Long skuId) {
+        return skuId != null ? "sku:" + skuId : "product:" + productId;
+    }
+
+    private static class Counter {
+        final Long productId;
+        final Long skuId;
+        private int stock;
+        private int held;
+        // 下單/回補交易進行中的筆數，與每次庫存異動遞增的序號（對帳用，預留不影響庫存不計入）
+        private int inFlight;
+        private long changes;
+        private long lastUsed = System.currentTimeMillis();
+        private boolean evicted;
+
+        Counter(Long productId, Long skuId, int stock) {
+            this.productId = productId;
+            this.skuId = skuId;
+            this.stock = stock;
+        }
+
+        synchronized boolean touch() {
+            lastUsed = System.currentTimeMillis();
+            return !evicted;
+        }
+
+        synchronized boolean reserve(int quantity) {
+            if (stock - held < quantity) {
+                return false;
+            }
+            held += quantity;
+            return true;
+        }
+
+        synchronized void release(int quantity) {
+            held = Math.max(0, held - quantity);
+        }
+
+        synchronized void hold(int quantity) {
+            held += quantity;
+        }
+
+        //售出：fromHold 由預留轉出、unused 為預留中多出的部分、extra 需從可用量扣
+        synchronized boolean sell(int fromHold, int unused, int extra) {
+            if (stock - (held - fromHold - unused) - fromHold < extra) {
+                return false;
+            }
+            held = Math.max(0, held - fromHold - unused);
+            stock -= fromHold + extra;
+            inFlight++;
+            changes++;
+            return true;
+        }
+
+        //售出回滾：加回庫存，原本的預留保留回去
+        synchronized void unsell(int unheld, int quantity) {
+            held += unheld;
+            stock += quantity;
+            changes++;
+        }
+
+        synchronized void begin() {
+            inFlight++;
+            changes++;
+        }
+
+        synchronized void finish() {
+            inFlight--;
+            changes++;
+        }
+
+        synchronized void restore(int quantity) {
+            stock += quantity;
+            changes++;
+        }
+
+        //沒有進行中的交易時回傳目前序號，否則 -1
+        synchronized long quietMark() {
+            return inFlight == 0 ? changes : -1;
+        }
+
+        //讀取資料庫期間沒有異動才套用差額
+        synchronized void reconcile(int dbStock, Long mark) {
+            if (mark == null || changes != mark || inFlight != 0) {
+                return;
+            }
+            stock += dbStock - stock;
+        }
+
+        synchronized boolean evictIfIdle(long cutoff) {
+            if (held == 0 && inFlight == 0 && lastUsed < cutoff) {
+                evicted = true;
+            }
+            return evicted;
+        }
+    }
+
+    private static class Line {
+        final String key;
+        final Long productId;
+        final Long skuId;
+        final int quantity;
+
+        Line(String key, Long productId, Long skuId, int quantity) {
+            this.key = key;
+            this.productId = productId;
+            this.skuId = skuId;
+            this.quantity = quantity;
+        }
+    }
+
+    public static class Reservation {
+        private final String id;
+        private final Long userId;
+        private final List<Line> lines;
+        private final LocalDateTime expiresAt;
+        private boolean committing;
+        private boolean released;
+
+        Reservation(String id, Long userId, List<Line> lines, LocalDateTime expiresAt) {
+            this.id = id;
+            this.userId = userId;
+            this.lines = lines;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getId() { return id; }
+        public LocalDateTime getExpiresAt() { return expiresAt; }
+        public int getLineCount() { return lines.size(); }
+    }
+}
@@ -1,31 +1,40 @@
 package com.example.demo.service;
 
-import java.util.List;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import com.example.demo.model.dto.OrderCreateDTO;
 import com.example.demo.model.dto.OrderItemDTO;
-import com.example.demo.model.entity.CartItem;
+import com.example.demo.model.dto.SellerOrderPageDTO;
+import com.example.demo.model.dto.SellerOrderRowDTO;
 import com.example.demo.model.entity.Order;
 import com.example.demo.model.entity.OrderItem;
 import com.example.demo.model.entity.Product;
 import com.example.demo.model.entity.ProductSku;
+import com.example.demo.model.entity.SellerOrderStat;
 import com.example.demo.model.entity.User;
+import com.example.demo.repository.InventoryRepository;
 import com.example.demo.repository.OrderRepository;
-import com.example.demo.repository.CartItemRepository;
 import com.example.demo.repository.OrderItemRepository;
 import com.example.demo.repository.ProductRepository;
 import com.example.demo.repository.ProductSkuRepository;
+import com.example.demo.repository.SellerOrderStatRepository;
 import com.example.demo.repository.UserRepository;
 import com.example.demo.service.EmailService;
 
 @Service
 public class OrderService {
     
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final LocalDateTime CURSOR_START = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    
     @Autowired
     private OrderRepository orderRepository;
     
@@ -39,7 +48,7 @@ public class OrderService {
     private ProductSkuRepository productSkuRepository;
     
     @Autowired
-    private CartItemRepository cartItemRepository;
+    private CartStore cartStore;
     
     @Autowired
     private UserRepository userRepository;
@@ -47,6 +56,18 @@ public class OrderService {
     @Autowired
     private EmailService emailService;
     
+    @Autowired
+    private ProductCacheService productCacheService;
+    
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private InventoryReservationService inventoryReservationService;
+    
+    @Autowired
+    private SellerOrderStatRepository sellerOrderStatRepository;
+    
     @Transactional
     public Order createOrder(OrderCreateDTO orderData) {
         try {
@@ -59,48 +80,45 @@ public class OrderService {
             User buyer = userRepository.findById(orderData.getUserId())
                 .orElseThrow(() -> new IllegalArgumentException("用戶不存在"));
             
-            if (!Boolean.TRUE.equals(buyer.getEmailVerified())) {
+            if (!buyer.isEmailVerified()) {
                 throw new IllegalStateException("請先驗證email才能下單");
             }
             
             List<OrderItemDTO> orderItems = orderData.getOrderItems();
-            BigDecimal calculatedTotal = BigDecimal.ZERO;
             
-          
+            //商品與 SKU 各一次查詢預先載入
+            Set<Long> productIds = new HashSet<>();
+            Set<Long> skuIds = new HashSet<>();
             for (OrderItemDTO itemDto : orderItems) {
-                Product product = productRepository.findById(itemDto.getProductId())
-                    .orElseThrow(() -> new IllegalArgumentException(
-                        "商品不存在: " + itemDto.getProductId()));
-                
-                System.out.println("🔍 處理商品: ID=" + product.getProductId() + 
-                                 ", 名稱=" + product.getName());
-                
-                int availableStock;
-                String stockInfo;
-                
-               
+                productIds.add(itemDto.getProductId());
                 if (itemDto.getSkuId() != null) {
-                    //檢查SKU庫存
-                    ProductSku sku = productSkuRepository.findById(itemDto.getSkuId())
-                        .orElseThrow(() -> new IllegalArgumentException(
-                            "商品規格不存在: " + itemDto.getSkuId()));
-                    
-                    availableStock = sku.getStock();
-                    stockInfo = "SKU庫存=" + availableStock + " (SKU ID: " + itemDto.getSkuId() + ")";
-                } else {
-                    //檢查商品庫存
-                    availableStock = product.getStockQuantity();
-                    stockInfo = "商品庫存=" + availableStock;
+                    skuIds.add(itemDto.getSkuId());
                 }
-                
-                System.out.println("📦 " + stockInfo);
-                
-                if (availableStock < itemDto.getQuantity()) {
-                    throw new IllegalArgumentException(
-                        "商品 \"" + product.getName() + "\" 庫存不足，剩餘: " + 
-                        availableStock + "，需要: " + itemDto.getQuantity());
+            }
+            Map<Long, Product> products = productRepository.findAllById(productIds).stream()
+                .collect(Collectors.toMap(Product::getProductId, Function.identity()));
+            Map<Long, ProductSku> skus = skuIds.isEmpty() ? new HashMap<>() :
+                productSkuRepository.findAllById(skuIds).stream()
+                    .collect(Collectors.toMap(ProductSku::getSkuId, Function.identity()));
+            
+            //同商品同規格的多筆項目合併扣庫存
+            Map<String, InventoryRepository.StockChange> changes = new LinkedHashMap<>();
+            BigDecimal calculatedTotal = BigDecimal.ZERO;
+            
+            for (OrderItemDTO itemDto : orderItems) {
+                Product product = products.get(itemDto.getProductId());
+                if (product == null) {
+                    throw new IllegalArgumentException("商品不存在: " + itemDto.getProductId());
+                }
+                if (itemDto.getSkuId() != null && !skus.containsKey(itemDto.getSkuId())) {
+                    throw new IllegalArgumentException("商品規格不存在: " + itemDto.getSkuId());
                 }
                 
+                String key = product.getProductId() + ":" + itemDto.getSkuId();
+                InventoryRepository.StockChange existing = changes.get(key);
+                int quantity = itemDto.getQuantity() + (existing != null ? existing.getQuantity() : 0);
+                changes.put(key, new InventoryRepository.StockChange(product.getProductId(), itemDto.getSkuId(), quantity));
+                
                 BigDecimal itemTotal = itemDto.getPrice()
                     .multiply(BigDecimal.valueOf(itemDto.getQuantity()));
                 calculatedTotal = calculatedTotal.add(itemTotal);
@@ -110,10 +128,30 @@ public class OrderService {
                 throw new IllegalArgumentException("訂單總金額不正確");
             }
             
+            //先在記憶體確認預留（沒有預留的數量需扣掉他人保留後仍足夠），資料庫條件式扣庫存仍是最後防線
+            inventoryReservationService.commit(orderData.getReservationId(), orderData.getUserId(),
+                new ArrayList<>(changes.values()));
+            
+            //條件式扣庫存（stock >= 數量 才扣），任一筆失敗整筆訂單回滾
+            List<InventoryRepository.StockChange> failed =
+                inventoryRepository.decrementStock(new ArrayList<>(changes.values()));
+            if (!failed.isEmpty()) {
+                InventoryRepository.StockChange c = failed.get(0);
+                Product product = products.get(c.getProductId());
+                int available = c.getSkuId() != null
+                    ? skus.get(c.getSkuId()).getStock() : product.getStockQuantity();
+                throw new IllegalArgumentException(
+                    "商品 \"" + product.getName() + "\" 庫存不足，剩餘: " + 
+                    available + "，需要: " + c.getQuantity());
+            }
+            productRepository.refreshSkuAggregatesIn(productIds);
+            for (Long productId : productIds) {
+                productCacheService.evictProduct(productId);
+            }
+            
            
             Order order = new Order();
             order.setUserId(buyer.getUserId());
-            order.setCreatedAt(LocalDateTime.now());
             order.setStatus("PENDING");
             order.setTotalPrice(calculatedTotal);
             
@@ -126,47 +164,34 @@ public class OrderService {
             Order savedOrder = orderRepository.save(order);
             System.out.println("✅ 訂單創建成功: " + savedOrder.getOrderId());
             
+            List<OrderItem> items = new ArrayList<>();
             for (OrderItemDTO itemDto : orderItems) {
-                Product product = productRepository.findById(itemDto.getProductId()).get();
-                
                 OrderItem orderItem = new OrderItem();
                 orderItem.setOrderId(savedOrder.getOrderId());
-                orderItem.setProductId(product.getProductId());
+                orderItem.setProductId(itemDto.getProductId());
                 orderItem.setSkuId(itemDto.getSkuId());
                 orderItem.setQuantity(itemDto.getQuantity());
                 orderItem.setPrice(itemDto.getPrice());
-                
-                orderItemRepository.save(orderItem);
-                
-             
-                if (itemDto.getSkuId() != null) {
-                    
-                    ProductSku sku = productSkuRepository.findById(itemDto.getSkuId()).get();
-                    int newSkuStock = sku.getStock() - itemDto.getQuantity();
-                    sku.setStock(newSkuStock);
-                    productSkuRepository.save(sku);
-                    
-                    System.out.println("📦 SKU庫存已更新: " + product.getName() + 
-                                     " (SKU: " + sku.getSpecJson() + ")" +
-                                     ", 購買數量: " + itemDto.getQuantity() +
-                                     ", 剩餘庫存: " + newSkuStock);
-                } else {
-                   
-                    int newStock = product.getStockQuantity() - itemDto.getQuantity();
-                    product.setStockQuantity(newStock);
-                    productRepository.save(product);
-                    
-                    System.out.println("📦 商品庫存已更新: " + product.getName() + 
-                                     ", 購買數量: " + itemDto.getQuantity() +
-                                     ", 剩餘庫存: " + newStock);
-                }
-                
+                snapshot(orderItem, products.get(itemDto.getProductId()),
+                    itemDto.getSkuId() != null ? skus.get(itemDto.getSkuId()) : null);
+                items.add(orderItem);
+            }
+            orderItemRepository.saveAll(items);
+            recordStats(items, null, savedOrder.getStatus());
+            
+            Set<Long> sellerIds = products.values().stream()
+                .map(Product::getSellerId).collect(Collectors.toSet());
+            Map<Long, User> sellers = userRepository.findAllById(sellerIds).stream()
+                .collect(Collectors.toMap(User::getUserId, Function.identity()));
+            
+            for (OrderItemDTO itemDto : orderItems) {
+                Product product = products.get(itemDto.getProductId());
                 try {
-                    User seller = userRepository.findById(product.getSellerId()).orElse(null);
-                    if (seller != null && Boolean.TRUE.equals(seller.getEmailVerified())) {
+                    User seller = sellers.get(product.getSellerId());
+                    if (seller != null && seller.isEmailVerified()) {
                         emailService.sendNewOrderNotification(
                             seller, buyer, product, itemDto.getQuantity(), savedOrder);
-                        System.out.println("📧 賣家通知已發送: " + seller.getEmail());
+                        System.out.println("📧 賣家通知已排入寄送: " + seller.getEmail());
                     }
                 } catch (Exception e) {
                     System.err.println("⚠️ 發送賣家通知失敗: " + e.getMessage());
@@ -174,10 +199,9 @@ public class OrderService {
             }
             
             try {
-                List<CartItem> userCartItems = cartItemRepository.findByUserId(buyer.getUserId());
-                if (!userCartItems.isEmpty()) {
-                    cartItemRepository.deleteByUserId(buyer.getUserId());
-                    System.out.println("🗑️ 已清空用戶購物車: " + userCartItems.size() + " 個項目");
+                int cleared = cartStore.clear(buyer.getUserId());
+                if (cleared > 0) {
+                    System.out.println("🗑️ 已清空用戶購物車: " + cleared + " 個項目");
                 }
             } catch (Exception e) {
                 System.err.println("⚠️ 清空購物車失敗: " + e.getMessage());
@@ -186,9 +210,9 @@ public class OrderService {
             
 
             try {
-                if (Boolean.TRUE.equals(buyer.getEmailVerified())) {
+                if (buyer.isEmailVerified()) {
                     emailService.sendOrderConfirmation(buyer, savedOrder, orderItems);
-                    System.out.println("📧 買家訂單確認信已發送: " + buyer.getEmail());
+                    System.out.println("📧 買家訂單確認信已排入寄送: " + buyer.getEmail());
                 }
             } catch (Exception e) {
                 System.err.println("⚠️ 發送買家確認信失敗: " + e.getMessage());
@@ -203,6 +227,75 @@ public class OrderService {
         }
     }
     
+    //競標得標訂單（由競標結算建立，收件資訊待買家補填）
+    @Transactional
+    public Order createAuctionOrder(Product product, User winner, BigDecimal amount) {
+        Order order = new Order();
+        order.setUserId(winner.getUserId());
+        order.setStatus("PENDING");
+        order.setTotalPrice(amount);
+        order.setNote("競標得標：" + product.getName());
+        Order savedOrder = orderRepository.save(order);
+        
+        OrderItem orderItem = new OrderItem();
+        orderItem.setOrderId(savedOrder.getOrderId());
+        orderItem.setProductId(product.getProductId());
+        orderItem.setQuantity(1);
+        orderItem.setPrice(amount);
+        snapshot(orderItem, product, null);
+        orderItemRepository.save(orderItem);
+        recordStats(List.of(orderItem), null, savedOrder.getStatus());
+        
+        return savedOrder;
+    }
+    
+    //賣家更新訂單狀態（權限由呼叫端以 existsByOrderIdAndSellerId 驗證）
+    //以鎖定讀取取得目前狀態，同一訂單的狀態更新依序執行，統計的增減不會用到舊狀態
+    @Transactional
+    public void updateOrderStatus(Long orderId, String newStatus) {
+        String oldStatus = orderRepository.findStatusByIdForUpdate(orderId)
+            .orElseThrow(() -> new IllegalArgumentException("訂單不存在"));
+        if (newStatus.equals(oldStatus)) {
+            return;
+        }
+        if (orderRepository.updateStatusIf(orderId, oldStatus, newStatus) == 0) {
+            throw new IllegalStateException("訂單狀態已被更新，請重新整理");
+        }
+        recordStats(orderItemRepository.findByOrderId(orderId), oldStatus, newStatus);
+    }
+    
+    //賣家訂單統計（彙總表主鍵查詢）
+    @Transactional(readOnly = true)
+    public List<SellerOrderStat> getSellerOrderStats(Long sellerId) {
+        return sellerOrderStatRepository.findBySellerId(sellerId);
+    }
+    
+    //訂單狀態變動時增減各賣家的訂單數與金額（同一訂單對同一賣家只算一筆）
+    private void recordStats(List<OrderItem> items, String fromStatus, String toStatus) {
+        Map<Long, BigDecimal> revenueBySeller = new HashMap<>();
+        for (OrderItem item : items) {
+            if (item.getSellerId() != null) {
+                revenueBySeller.merge(item.getSellerId(), item.getTotalPrice(), BigDecimal::add);
+            }
+        }
+        for (Map.Entry<Long, BigDecimal> e : revenueBySeller.entrySet()) {
+            if (fromStatus != null) {
+                sellerOrderStatRepository.add(e.getKey(), fromStatus, -1, e.getValue().negate());
+            }
+            if (toStatus != null) {
+                sellerOrderStatRepository.add(e.getKey(), toStatus, 1, e.getValue());
+            }
+        }
+    }
+    
+    //記錄下單當下的商品名稱、圖片、規格與賣家
+    private void snapshot(OrderItem orderItem, Product product, ProductSku sku) {
+        orderItem.setProductName(product.getName());
+        orderItem.setProductImage(product.getMainImageUrl());
+        orderItem.setSellerId(product.getSellerId());
+        orderItem.setSkuSpec(sku != null ? sku.getSpecJson() : null);
+    }
+    
     @Transactional
     public void cancelOrder(Long orderId, Long userId) {
         try {
@@ -212,27 +305,36 @@ public class OrderService {
                 throw new IllegalArgumentException("訂單不存在或無權限操作");
             }
             
-            if (!"PENDING".equals(order.getStatus())) {
+            //以條件式更新搶下狀態，避免同一訂單被重複取消、重複回補庫存
+            if (!"PENDING".equals(order.getStatus()) ||
+                    orderRepository.updateStatusIf(orderId, "PENDING", "CANCELLED") == 0) {
                 throw new IllegalStateException("此訂單狀態無法取消");
             }
             
-            //恢復商品庫存
+            //恢復商品庫存（有 SKU 的訂單項目恢復 SKU 庫存，SKU 已刪除則回補商品庫存）
             List<OrderItem> orderItems = orderItemRepository.findByOrderId(orderId);
+            Set<Long> skuIds = orderItems.stream()
+                .map(OrderItem::getSkuId).filter(Objects::nonNull).collect(Collectors.toSet());
+            Set<Long> existingSkuIds = skuIds.isEmpty() ? new HashSet<>() :
+                productSkuRepository.findAllById(skuIds).stream()
+                    .map(ProductSku::getSkuId).collect(Collectors.toSet());
+            
+            List<InventoryRepository.StockChange> changes = new ArrayList<>();
+            Set<Long> productIds = new HashSet<>();
             for (OrderItem item : orderItems) {
-                Product product = productRepository.findById(item.getProductId()).orElse(null);
-                if (product != null) {
-                    int newStock = product.getStockQuantity() + item.getQuantity();
-                    product.setStockQuantity(newStock);
-                    productRepository.save(product);
-                    
-                    System.out.println("📦 恢復商品庫存: " + product.getName() + 
-                                     ", 恢復數量: " + item.getQuantity() +
-                                     ", 新庫存: " + newStock);
-                }
+                Long skuId = existingSkuIds.contains(item.getSkuId()) ? item.getSkuId() : null;
+                changes.add(new InventoryRepository.StockChange(item.getProductId(), skuId, item.getQuantity()));
+                productIds.add(item.getProductId());
             }
+            inventoryRepository.incrementStock(changes);
+            inventoryReservationService.restock(changes);
+            productRepository.refreshSkuAggregatesIn(productIds);
+            for (Long productId : productIds) {
+                productCacheService.evictProduct(productId);
+            }
+            System.out.println("📦 已恢復訂單 " + orderId + " 的庫存: " + changes.size() + " 個項目");
             
-            order.setStatus("CANCELLED");
-            orderRepository.save(order);
+            recordStats(orderItems, "PENDING", "CANCELLED");
             
             System.out.println("✅ 訂單已取消: " + orderId);
             
@@ -251,6 +353,116 @@ public class OrderService {
         }
     }
     
+    //買家訂單列表：訂單項目一次查出，商品資訊使用下單時的快照，賣家名稱批次查詢
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getBuyerOrders(Long userId) {
+        List<Order> orders = getOrdersByUserId(userId);
+        if (orders.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        Map<Long, List<OrderItem>> itemsByOrder = orderItemRepository.findByOrderIdIn(
+                orders.stream().map(Order::getOrderId).collect(Collectors.toList()))
+            .stream()
+            .collect(Collectors.groupingBy(OrderItem::getOrderId));
+        Set<Long> sellerIds = itemsByOrder.values().stream()
+            .flatMap(List::stream)
+            .map(OrderItem::getSellerId)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+        Map<Long, String> sellerNames = sellerIds.isEmpty() ? new HashMap<>() :
+            userRepository.findAllById(sellerIds).stream()
+                .collect(Collectors.toMap(User::getUserId, User::getUsername));
+        
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Order order : orders) {
+            List<Map<String, Object>> itemDetails = new ArrayList<>();
+            for (OrderItem item : itemsByOrder.getOrDefault(order.getOrderId(), List.of())) {
+                Map<String, Object> itemMap = new HashMap<>();
+                itemMap.put("productId", item.getProductId());
+                itemMap.put("productName", item.getProductName() != null ? item.getProductName() : "未知商品");
+                itemMap.put("productImage", toImageUrl(item.getProductImage()));
+                itemMap.put("skuSpec", item.getSkuSpec());
+                itemMap.put("quantity", item.getQuantity());
+                itemMap.put("price", item.getPrice());
+                itemMap.put("sellerName", sellerNames.getOrDefault(item.getSellerId(), "未知賣家"));
+                itemMap.put("sellerId", item.getSellerId());
+                itemDetails.add(itemMap);
+            }
+            
+            Map<String, Object> orderMap = new HashMap<>();
+            orderMap.put("orderId", order.getOrderId());
+            orderMap.put("createdAt", order.getCreatedAt());
+            orderMap.put("status", order.getStatus());
+            orderMap.put("totalPrice", order.getTotalPrice());
+            orderMap.put("orderItems", itemDetails);
+            result.add(orderMap);
+        }
+        return result;
+    }
+    
+    //賣家訂單分頁：先以游標取一頁訂單 ID，再一次查出這些訂單的賣家項目
+    @Transactional(readOnly = true)
+    public SellerOrderPageDTO getSellerOrderPage(Long sellerId, String status,
+                                                 LocalDateTime cursorCreatedAt, Long cursorId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        String statusFilter = status != null && !status.trim().isEmpty() ? status.trim() : null;
+        List<Long> orderIds = orderRepository.findSellerOrderIdsPage(sellerId, statusFilter,
+            cursorCreatedAt != null ? cursorCreatedAt : CURSOR_START,
+            cursorId != null ? cursorId : Long.MAX_VALUE,
+            PageRequest.of(0, pageSize + 1));
+        
+        boolean hasMore = orderIds.size() > pageSize;
+        if (hasMore) {
+            orderIds = orderIds.subList(0, pageSize);
+        }
+        
+        Map<Long, Map<String, Object>> orders = new LinkedHashMap<>();
+        if (!orderIds.isEmpty()) {
+            for (SellerOrderRowDTO row : orderRepository.findSellerOrderRows(orderIds, sellerId)) {
+                Map<String, Object> orderMap = orders.computeIfAbsent(row.getOrderId(), id -> {
+                    Map<String, Object> m = new HashMap<>();
+                    m.put("orderId", row.getOrderId());
+                    m.put("createdAt", row.getCreatedAt());
+                    m.put("status", row.getStatus());
+                    m.put("totalPrice", row.getTotalPrice());
+                    m.put("buyerName", row.getBuyerName() != null ? row.getBuyerName() : "未知買家");
+                    m.put("buyerPhone", row.getReceiverPhone());
+                    m.put("buyerAddress", row.getReceiverAddress());
+                    m.put("orderItems", new ArrayList<Map<String, Object>>());
+                    return m;
+                });
+                
+                Map<String, Object> itemMap = new HashMap<>();
+                itemMap.put("productId", row.getProductId());
+                itemMap.put("productName", row.getProductName() != null ? row.getProductName() : "未知商品");
+                itemMap.put("productImage", toImageUrl(row.getProductImage()));
+                itemMap.put("quantity", row.getQuantity());
+                itemMap.put("price", row.getPrice());
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> items = (List<Map<String, Object>>) orderMap.get("orderItems");
+                items.add(itemMap);
+            }
+        }
+        
+        SellerOrderPageDTO page = new SellerOrderPageDTO();
+        page.setOrders(new ArrayList<>(orders.values()));
+        page.setHasMore(hasMore);
+        if (hasMore && !page.getOrders().isEmpty()) {
+            Map<String, Object> last = page.getOrders().get(page.getOrders().size() - 1);
+            page.setNextCursorCreatedAt((LocalDateTime) last.get("createdAt"));
+            page.setNextCursorId((Long) last.get("orderId"));
+        }
+        return page;
+    }
+    
+    private static String toImageUrl(String imageUrl) {
+        if (imageUrl == null || imageUrl.trim().isEmpty() || imageUrl.contains("default.png")) {
+            return null;
+        }
+        return imageUrl.startsWith("/") ? imageUrl : "/uploads/" + imageUrl;
+    }
+    
     public Order getOrderByIdAndUserId(Long orderId, Long userId) {
         try {
             return orderRepository.findByOrderIdAndUserId(orderId, userId).orElse(null);
@@ -0,0 +1,214 @@
+package com.example.demo.service;
+
+import com.example.demo.model.dto.ProductDTO;
+import com.example.demo.model.dto.ProductPageDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//商品資料快取：商品詳情以 productId 為 key，列表以查詢條件為 key
+//DTO 可修改，快取內的物件不直接交給呼叫端，每次回傳複本
+//命中、未命中與淘汰次數定時寫到日誌（不對外開放查詢）
+@Service
+public class ProductCacheService {
+
+    @Value("${app.cache.product.max-size:5000}")
+    private int productMaxSize;
+
+    @Value("${app.cache.product.ttl-seconds:300}")
+    private long productTtlSeconds;
+
+    @Value("${app.cache.listing.max-size:500}")
+    private int listingMaxSize;
+
+    @Value("${app.cache.listing.ttl-seconds:30}")
+    private long listingTtlSeconds;
+
+    private LruCache<Long, ProductDTO> products;
+    private LruCache<String, Object> listings;
+
+    // 每次失效都遞增，載入期間若有寫入則不回填舊資料
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        products = new LruCache<>(productMaxSize, productTtlSeconds * 1000);
+        listings = new LruCache<>(listingMaxSize, listingTtlSeconds * 1000);
+    }
+
+    public ProductDTO getProduct(Long productId, Supplier<ProductDTO> loader) {
+        ProductDTO dto = products.get(productId, loader, invalidations);
+        return dto != null ? dto.copy() : null;
+    }
+
+    //列表內容為 List<ProductDTO> 或 ProductPageDTO
+    @SuppressWarnings("unchecked")
+    public <T> T getListing(String key, Supplier<T> loader) {
+        return (T) copyListing(listings.get(key, (Supplier<Object>) loader, invalidations));
+    }
+
+    //商品異動：清除該商品與所有列表（交易提交後再清一次）
+    public void evictProduct(Long productId) {
+        runNowAndAfterCommit(() -> {
+            invalidations.incrementAndGet();
+            if (productId != null) {
+                products.remove(productId);
+            }
+            listings.clear();
+        });
+    }
+
+    public void evictListings() {
+        runNowAndAfterCommit(() -> {
+            invalidations.incrementAndGet();
+            listings.clear();
+        });
+    }
+
+    public void evictAll() {
+        runNowAndAfterCommit(() -> {
+            invalidations.incrementAndGet();
+            products.clear();
+            listings.clear();
+        });
+    }
+
+    //商品資料版本：任何商品異動都會改變，其他地方的衍生快取（如購物車單價）用來判斷是否過期
+    public long version() {
+        return invalidations.get();
+    }
+
+    @Scheduled(fixedDelayString = "${app.cache.stats-log-ms:300000}")
+    public void logStats() {
+        System.out.println("📊 商品快取統計 product=" + products.stats() + " listing=" + listings.stats());
+    }
+
+    private static Object copyListing(Object value) {
+        if (value instanceof List) {
+            return ((List<?>) value).stream()
+                .map(o -> o instanceof ProductDTO ? ((ProductDTO) o).copy() : o)
+                .collect(Collectors.toList());
+        }
+        if (value instanceof ProductPageDTO) {
+            ProductPageDTO page = (ProductPageDTO) value;
+            ProductPageDTO copy = new ProductPageDTO();
+            copy.setItems(page.getItems().stream().map(ProductDTO::copy).collect(Collectors.toList()));
+            copy.setHasMore(page.isHasMore());
+            copy.setNextCursorCreatedAt(page.getNextCursorCreatedAt());
+            copy.setNextCursorId(page.getNextCursorId());
+            return copy;
+        }
+        return value;
+    }
+
+    private void runNowAndAfterCommit(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        }
+    }
+
+    private static class LruCache<K, V> {
+        private final int maxSize;
+        private final long ttlMillis;
+        private final LinkedHashMap<K, Entry<V>> map;
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        LruCache(int maxSize, long ttlMillis) {
+            this.maxSize = maxSize;
+            this.ttlMillis = ttlMillis;
+            this.map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() > LruCache.this.maxSize) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        V get(K key, Supplier<V> loader, AtomicLong invalidations) {
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                Entry<V> entry = map.get(key);
+                if (entry != null && entry.expiresAt > now) {
+                    hits.increment();
+                    return entry.value;
+                }
+                if (entry != null) {
+                    map.remove(key);
+                    evictions.increment();
+                }
+            }
+            misses.increment();
+
+            long version = invalidations.get();
+            V value = loader.get();
+            if (value != null) {
+                synchronized (this) {
+                    if (invalidations.get() == version) {
+                        map.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+                    }
+                }
+            }
+            return value;
+        }
+
+        synchronized void remove(K key) {
+            map.remove(key);
+        }
+
+        synchronized void clear() {
+            map.clear();
+        }
+
+        Map<String, Object> stats() {
+            long hitCount = hits.sum();
+            long missCount = misses.sum();
+            long total = hitCount + missCount;
+            int size;
+            synchronized (this) {
+                size = map.size();
+            }
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("size", size);
+            stats.put("maxSize", maxSize);
+            stats.put("hits", hitCount);
+            stats.put("misses", missCount);
+            stats.put("evictions", evictions.sum());
+            stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+            return stats;
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.demo.service;
+
+import com.example.demo.model.dto.ProductDTO;
+import com.example.demo.model.entity.Product;
+import com.example.demo.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//商品全文檢索：名稱、分類、描述、規格的記憶體倒排索引（中文以二元組切詞，另收單字供單字查詢）
+//重建時另建一份索引，完成後整份換上，查詢不會讀到建到一半的索引
+@Service
+public class ProductSearchIndex {
+
+    private static final float NAME_WEIGHT = 3.0f;
+    private static final float CATEGORY_WEIGHT = 2.0f;
+    private static final float SPEC_WEIGHT = 1.0f;
+    private static final float DESCRIPTION_WEIGHT = 1.0f;
+    private static final float PREFIX_WEIGHT = 0.5f;
+    private static final int MAX_PREFIX_LENGTH = 15;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private volatile Index index = new Index();
+
+    //啟動時從資料庫重建（重建期間的商品異動等重建完成後再套用到新索引）
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        Index fresh = new Index();
+        List<ProductDTO> products = productRepository.findActiveProducts();
+        for (ProductDTO p : products) {
+            put(fresh, p.getId(), p.getName(), p.getCategory(), p.getDescription(), p.getSpecifications(),
+                p.getCreatedAt(), p.getBidEndTime());
+        }
+        index = fresh;
+        System.out.println("🔍 商品搜尋索引重建完成，共 " + fresh.docs.size() + " 筆");
+    }
+
+    //商品新增/修改後更新索引（交易提交後才生效）
+    public void index(Product product) {
+        Long productId = product.getProductId();
+        boolean active = product.getStatus() != null && product.getStatus().isActive();
+        String name = product.getName();
+        String category = product.getCategory();
+        String description = product.getDescription();
+        String specifications = product.getSpecifications();
+        LocalDateTime createdAt = product.getCreatedAt();
+        LocalDateTime bidEndTime = product.getBidEndTime();
+
+        afterCommit(() -> {
+            synchronized (this) {
+                if (active) {
+                    put(index, productId, name, category, description, specifications, createdAt, bidEndTime);
+                } else {
+                    delete(index, productId);
+                }
+            }
+        });
+    }
+
+    public void remove(Long productId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                delete(index, productId);
+            }
+        });
+    }
+
+    //依關聯度排序回傳商品 ID，所有查詢詞都必須命中
+    public List<Long> search(String keyword, int limit) {
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(keyword));
+        if (queryTerms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Index current = index;
+        Map<Long, Doc> docs = current.docs;
+        Map<String, Map<Long, Float>> postings = current.postings;
+
+        List<Map<Long, Float>> lists = new ArrayList<>();
+        for (String term : queryTerms) {
+            Map<Long, Float> posting = postings.get(term);
+            if (posting == null || posting.isEmpty()) {
+                return new ArrayList<>();
+            }
+            lists.add(posting);
+        }
+        lists.sort(Comparator.comparingInt(Map::size));
+
+        int totalDocs = Math.max(1, docs.size());
+        LocalDateTime now = LocalDateTime.now();
+        List<Hit> hits = new ArrayList<>();
+
+        for (Long productId : lists.get(0).keySet()) {
+            Doc doc = docs.get(productId);
+            if (doc == null || (doc.bidEndTime != null && !doc.bidEndTime.isAfter(now))) {
+                continue;
+            }
+            double score = 0;
+            boolean matchedAll = true;
+            for (Map<Long, Float> posting : lists) {
+                Float weight = posting.get(productId);
+                if (weight == null) {
+                    matchedAll = false;
+                    break;
+                }
+                double idf = Math.log(1.0 + (double) totalDocs / posting.size());
+                score += weight * idf / Math.sqrt(doc.length);
+            }
+            if (matchedAll) {
+                hits.add(new Hit(productId, score, doc.createdAt));
+            }
+        }
+
+        hits.sort(Comparator.comparingDouble((Hit h) -> h.score).reversed()
+            .thenComparing(h -> h.createdAt, Comparator.nullsLast(Comparator.reverseOrder())));
+
+        List<Long> result = new ArrayList<>();
+        for (int i = 0; i < hits.size() && i < limit; i++) {
+            result.add(hits.get(i).productId);
+        }
+        return result;
+    }
+
+    public int size() {
+        return index.docs.size();
+    }
+
+    private void put(Index target, Long productId, String name, String category, String description,
+                     String specifications, LocalDateTime createdAt, LocalDateTime bidEndTime) {
+        delete(target, productId);
+
+        Map<String, Float> terms = new HashMap<>();
+        addField(terms, name, NAME_WEIGHT);
+        addField(terms, category, CATEGORY_WEIGHT);
+        addField(terms, specifications, SPEC_WEIGHT);
+        addField(terms, description, DESCRIPTION_WEIGHT);
+
+        for (Map.Entry<String, Float> e : terms.entrySet()) {
+            target.postings.computeIfAbsent(e.getKey(), k -> new ConcurrentHashMap<>()).put(productId, e.getValue());
+        }
+        target.docs.put(productId, new Doc(terms.keySet(), Math.max(1, terms.size()), createdAt, bidEndTime));
+    }
+
+    private void delete(Index target, Long productId) {
+        Doc old = target.docs.remove(productId);
+        if (old == null) {
+            return;
+        }
+        for (String term : old.terms) {
+            Map<Long, Float> posting = target.postings.get(term);
+            if (posting != null) {
+                posting.remove(productId);
+                if (posting.isEmpty()) {
+                    target.postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private void addField(Map<String, Float> terms, String text, float weight) {
+        for (String token : tokenize(text)) {
+            terms.merge(token, weight, Float::sum);
+            // 英數字詞加入前綴，支援輸入一半的關鍵字
+            if (!isCjk(token.codePointAt(0))) {
+                int max = Math.min(token.length() - 1, MAX_PREFIX_LENGTH);
+                for (int len = 2; len <= max; len++) {
+                    terms.merge(token.substring(0, len), weight * PREFIX_WEIGHT, Float::sum);
+                }
+            }
+        }
+        // 中文另收單字（權重同前綴），單字查詢也能命中
+        for (String token : cjkUnigrams(text)) {
+            terms.merge(token, weight * PREFIX_WEIGHT, Float::sum);
+        }
+    }
+
+    //英數字以連續字元為一詞，中日韓文字切成二元組（單字則保留單字）
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        List<Integer> cjkRun = new ArrayList<>();
+
+        for (int i = 0; i < lower.length(); ) {
+            int cp = lower.codePointAt(i);
+            i += Character.charCount(cp);
+
+            if (isCjk(cp)) {
+                flushWord(word, tokens);
+                cjkRun.add(cp);
+            } else if (Character.isLetterOrDigit(cp)) {
+                flushCjk(cjkRun, tokens);
+                word.appendCodePoint(cp);
+            } else {
+                flushWord(word, tokens);
+                flushCjk(cjkRun, tokens);
+            }
+        }
+        flushWord(word, tokens);
+        flushCjk(cjkRun, tokens);
+        return tokens;
+    }
+
+    //二字以上中文詞中的每個字（單字詞已由 tokenize 收錄）
+    static List<String> cjkUnigrams(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int runStart = -1;
+        for (int i = 0; i <= text.length(); ) {
+            int cp = i < text.length() ? text.codePointAt(i) : -1;
+            if (cp >= 0 && isCjk(cp)) {
+                if (runStart < 0) {
+                    runStart = i;
+                }
+            } else if (runStart >= 0) {
+                String run = text.substring(runStart, i);
+                if (run.codePointCount(0, run.length()) > 1) {
+                    run.codePoints().forEach(c -> tokens.add(new String(Character.toChars(c))));
+                }
+                runStart = -1;
+            }
+            i += cp >= 0 ? Character.charCount(cp) : 1;
+        }
+        return tokens;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> tokens) {
+        if (word.length() > 0) {
+            tokens.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static void flushCjk(List<Integer> run, List<String> tokens) {
+        if (run.size() == 1) {
+            tokens.add(new String(Character.toChars(run.get(0))));
+        } else {
+            for (int i = 0; i + 1 < run.size(); i++) {
+                tokens.add(new StringBuilder().appendCodePoint(run.get(i)).appendCodePoint(run.get(i + 1)).toString());
+            }
+        }
+        run.clear();
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+            || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA
+            || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private void afterCommit(Runnable update) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    update.run();
+                }
+            });
+        } else {
+            update.run();
+        }
+    }
+
+    private static class Index {
+        final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+        final Map<String, Map<Long, Float>> postings = new ConcurrentHashMap<>();
+    }
+
+    private static class Doc {
+        final Set<String> terms;
+        final int length;
+        final LocalDateTime createdAt;
+        final LocalDateTime bidEndTime;
+
+        Doc(Set<String> terms, int length, LocalDateTime createdAt, LocalDateTime bidEndTime) {
+            this.terms = terms;
+            this.length = length;
+            this.createdAt = createdAt;
+            this.bidEndTime = bidEndTime;
+        }
+    }
+
+    private static class Hit {
+        final Long productId;
+        final double score;
+        final LocalDateTime createdAt;
+
+        Hit(Long productId, double score, LocalDateTime createdAt) {
+            this.productId = productId;
+            this.score = score;
+            this.createdAt = createdAt;
+        }
+    }
+}
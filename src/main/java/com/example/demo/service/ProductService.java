@@ -3,6 +3,7 @@ package com.example.demo.service;
 
 import com.example.demo.model.dto.ProductCreateDTO;
 import com.example.demo.model.dto.ProductDTO;
+import com.example.demo.model.dto.ProductPageDTO;
 import com.example.demo.model.entity.Product;
 import com.example.demo.model.entity.Product.ProductStatus;
 import com.example.demo.model.entity.ProductImage;
@@ -15,6 +16,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -23,6 +25,7 @@ import java.time.LocalDateTime;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -37,9 +40,17 @@ import java.nio.file.Path;
 @RequiredArgsConstructor
 @Transactional
 public class ProductService {
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final LocalDateTime CURSOR_START = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    
     private final ProductRepository productRepository;
     private final ProductSkuRepository productSkuRepository;
     private final ProductSkuService productSkuService;
+    private final ProductCacheService productCacheService;
+    private final ProductSearchIndex productSearchIndex;
+    private final CategoryFacetService categoryFacetService;
+    private final AuctionBook auctionBook;
+    private final AuctionExpiryScheduler auctionExpiryScheduler;
     @Autowired
     private ProductImageRepository productImageRepository;
     
@@ -138,6 +149,8 @@ public class ProductService {
         }
         
         Product savedProduct = productRepository.save(product);
+        productCacheService.evictListings();
+        indexProduct(savedProduct);
         System.out.println("商品建立成功，ID: " + savedProduct.getProductId());
         if (images != null && !images.isEmpty()) {
             saveProductImages(savedProduct.getProductId(), images);
@@ -220,6 +233,7 @@ public class ProductService {
                 productImageRepository.save(productImage);
             }
         }
+        productCacheService.evictProduct(productId);
     }
     public Product updateProduct(Long id, ProductCreateDTO dto) {
         System.out.println("=== 更新商品 ID: " + id + " ===");
@@ -257,53 +271,99 @@ public class ProductService {
         }
         
         Product updatedProduct = productRepository.save(product);
+        productRepository.refreshSkuAggregates(id);
+        productCacheService.evictProduct(id);
+        indexProduct(updatedProduct);
         System.out.println("商品更新成功");
         return updatedProduct;
     }
     @Transactional(readOnly = true)
     public List<ProductDTO> getActiveProductDTOs() {
-        List<ProductDTO> dtos = productRepository.findActiveProducts();
-        for (ProductDTO dto : dtos) {
-            List<ProductSku> skus = productSkuRepository.findByProductId(dto.getId());
-            dto.setSkus(skus);
-            
-            if (skus != null && !skus.isEmpty()) {
-                int totalStock = skus.stream().mapToInt(ProductSku::getStock).sum();
-                dto.setStockQuantity(totalStock);
-                BigDecimal minPrice = skus.stream().map(ProductSku::getPrice).min(BigDecimal::compareTo).orElse(dto.getCurrentPrice());
-                BigDecimal maxPrice = skus.stream().map(ProductSku::getPrice).max(BigDecimal::compareTo).orElse(dto.getCurrentPrice());
-                dto.setMinPrice(minPrice);
-                dto.setMaxPrice(maxPrice);
-            } else {
-                dto.setMinPrice(dto.getCurrentPrice());
-                dto.setMaxPrice(dto.getCurrentPrice());
+        return productCacheService.getListing("active", () -> {
+            List<ProductDTO> dtos = productRepository.findActiveProducts();
+            attachSkusAndImages(dtos);
+            for (ProductDTO dto : dtos) {
+                applySkuPricing(dto, true);
             }
-            
-          
-            List<ProductImage> images = productImageRepository.findByProductIdOrderBySortOrderAsc(dto.getId());
-            dto.setProductImages(images);
+            return dtos;
+        });
+    }
+
+    //上架商品分頁：每頁固定 3 次查詢（商品、SKU、圖片）
+    @Transactional(readOnly = true)
+    public ProductPageDTO getActiveProductPage(LocalDateTime cursorCreatedAt, Long cursorId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        LocalDateTime createdAt = cursorCreatedAt != null ? cursorCreatedAt : CURSOR_START;
+        Long id = cursorId != null ? cursorId : Long.MAX_VALUE;
+        
+        String key = "page:" + createdAt + ":" + id + ":" + pageSize;
+        return productCacheService.getListing(key, () -> {
+            List<ProductDTO> rows = productRepository.findActiveProductsPage(
+                createdAt, id, PageRequest.of(0, pageSize + 1));
+            return toPage(rows, pageSize, true);
+        });
+    }
+
+    private ProductPageDTO toPage(List<ProductDTO> rows, int pageSize, boolean useTotalStock) {
+        boolean hasMore = rows.size() > pageSize;
+        List<ProductDTO> items = hasMore ? new ArrayList<>(rows.subList(0, pageSize)) : rows;
+        
+        attachSkusAndImages(items);
+        for (ProductDTO dto : items) {
+            applySkuPricing(dto, useTotalStock);
         }
-        return dtos;
+        
+        ProductPageDTO page = new ProductPageDTO();
+        page.setItems(items);
+        page.setHasMore(hasMore);
+        if (!items.isEmpty()) {
+            ProductDTO last = items.get(items.size() - 1);
+            page.setNextCursorCreatedAt(last.getCreatedAt());
+            page.setNextCursorId(last.getId());
+        }
+        return page;
     }
 
-    public List<ProductDTO> getMyProductDTOs(Long userId) {
-        List<ProductDTO> dtos = productRepository.findDTOsBySellerId(userId);
+    //批次載入 SKU 與圖片，各一次 IN (...) 查詢
+    private void attachSkusAndImages(List<ProductDTO> dtos) {
+        if (dtos.isEmpty()) {
+            return;
+        }
+        List<Long> ids = dtos.stream().map(ProductDTO::getId).collect(Collectors.toList());
+        
+        Map<Long, List<ProductSku>> skusByProduct = productSkuRepository.findByProductIdIn(ids).stream()
+            .collect(Collectors.groupingBy(ProductSku::getProductId));
+        Map<Long, List<ProductImage>> imagesByProduct = productImageRepository.findByProductIdInOrderBySortOrderAsc(ids).stream()
+            .collect(Collectors.groupingBy(ProductImage::getProductId));
+        
         for (ProductDTO dto : dtos) {
-            List<ProductSku> skus = productSkuRepository.findByProductId(dto.getId());
-            dto.setSkus(skus);
-            if (skus != null && !skus.isEmpty()) {
-                BigDecimal minPrice = skus.stream().map(ProductSku::getPrice).min(BigDecimal::compareTo).orElse(dto.getCurrentPrice());
-                BigDecimal maxPrice = skus.stream().map(ProductSku::getPrice).max(BigDecimal::compareTo).orElse(dto.getCurrentPrice());
-                dto.setMinPrice(minPrice);
-                dto.setMaxPrice(maxPrice);
-            } else {
-                dto.setMinPrice(dto.getCurrentPrice());
-                dto.setMaxPrice(dto.getCurrentPrice());
-            }
-            List<ProductImage> images = productImageRepository.findByProductIdOrderBySortOrderAsc(dto.getId());
-            dto.setProductImages(images);
+            dto.setSkus(skusByProduct.getOrDefault(dto.getId(), new ArrayList<>()));
+            dto.setProductImages(imagesByProduct.getOrDefault(dto.getId(), new ArrayList<>()));
+        }
+    }
+
+    //價格區間與總庫存直接取自 products 彙總欄位
+    private void applySkuPricing(ProductDTO dto, boolean useTotalStock) {
+        if (useTotalStock && dto.getTotalStock() != null) {
+            dto.setStockQuantity(dto.getTotalStock());
+        }
+        if (dto.getMinPrice() == null) {
+            dto.setMinPrice(dto.getCurrentPrice());
+        }
+        if (dto.getMaxPrice() == null) {
+            dto.setMaxPrice(dto.getCurrentPrice());
         }
-        return dtos;
+    }
+
+    public List<ProductDTO> getMyProductDTOs(Long userId) {
+        return productCacheService.getListing("seller:" + userId, () -> {
+            List<ProductDTO> dtos = productRepository.findDTOsBySellerId(userId);
+            attachSkusAndImages(dtos);
+            for (ProductDTO dto : dtos) {
+                applySkuPricing(dto, false);
+            }
+            return dtos;
+        });
     }
 
    
@@ -335,33 +395,38 @@ public class ProductService {
         return products;
     }
  
-    private ProductDTO convertToDTO(Product product) {
-        ProductDTO dto = new ProductDTO(
-            product.getProductId(), product.getSellerId(), product.getName(), product.getCategory(),
-            product.getDescription(), product.getStartPrice(), product.getCurrentPrice(),
-            product.getStockQuantity(), product.getMainImageUrl(), product.getBidEndTime(),
-            product.getStatus().toString(), product.getCreatedAt(), product.getSpecifications(),
-            product.getProductCondition()
-        );
-        
-       
-        List<ProductSku> skus = productSkuRepository.findByProductId(product.getProductId());
-        dto.setSkus(skus);
-        
-     
-        List<ProductImage> images = productImageRepository.findByProductIdOrderBySortOrderAsc(product.getProductId());
-        dto.setProductImages(images);
-        
-        return dto;
-    }
-
    
     @Transactional(readOnly = true)
     public List<ProductDTO> getProductsByCategory(String category) {
-        List<Product> products = productRepository.findByCategory(category);
-        return products.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return productCacheService.getListing("category:" + category, () -> {
+            List<ProductDTO> dtos = productRepository.findActiveByCategoryWithDto(
+                category, CategoryFacetService.UNCATEGORIZED.equals(category));
+            attachSkusAndImages(dtos);
+            for (ProductDTO dto : dtos) {
+                applySkuPricing(dto, true);
+            }
+            return dtos;
+        });
+    }
+
+    //分類商品分頁：與上架商品分頁相同，每頁固定 3 次查詢
+    @Transactional(readOnly = true)
+    public ProductPageDTO getCategoryProductPage(String category, LocalDateTime cursorCreatedAt, Long cursorId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        LocalDateTime createdAt = cursorCreatedAt != null ? cursorCreatedAt : CURSOR_START;
+        Long id = cursorId != null ? cursorId : Long.MAX_VALUE;
+        
+        String key = "category-page:" + category + ":" + createdAt + ":" + id + ":" + pageSize;
+        return productCacheService.getListing(key, () -> {
+            List<ProductDTO> rows = productRepository.findActiveByCategoryPage(
+                category, CategoryFacetService.UNCATEGORIZED.equals(category), createdAt, id,
+                PageRequest.of(0, pageSize + 1));
+            return toPage(rows, pageSize, true);
+        });
+    }
+
+    public Map<String, Object> getCategoryTree() {
+        return categoryFacetService.getTree();
     }
     
     @Transactional
@@ -403,6 +468,9 @@ public class ProductService {
             
             
             Product savedProduct = productRepository.save(existingProduct);
+            productRepository.refreshSkuAggregates(id);
+            productCacheService.evictProduct(id);
+            indexProduct(savedProduct);
             
             if (hasSkus && skusJson != null && !skusJson.trim().isEmpty()) {
                
@@ -444,7 +512,10 @@ public class ProductService {
             throw new IllegalArgumentException("無效的狀態值: " + newStatus);
         }
         
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        productCacheService.evictProduct(productId);
+        indexProduct(saved);
+        return saved;
     }
 
 
@@ -474,6 +545,7 @@ public class ProductService {
             }
         }
         
+        productCacheService.evictProduct(productId);
         System.out.println("=== 所有圖片儲存完成 ===");
     }
 
@@ -487,6 +559,7 @@ public class ProductService {
         try {
           
             productImageRepository.deleteByProductId(productId);
+            productCacheService.evictProduct(productId);
             System.out.println("✅ 舊圖片刪除完成");
             
             saveProductImages(productId, newImages);
@@ -498,6 +571,10 @@ public class ProductService {
 
  
     public ProductDTO getProductDTOById(Long id) {
+        return productCacheService.getProduct(id, () -> loadProductDTO(id));
+    }
+
+    private ProductDTO loadProductDTO(Long id) {
         Product product = productRepository.findById(id).orElse(null);
         if (product == null) return null;
         
@@ -552,6 +629,8 @@ public class ProductService {
             
           
             productRepository.deleteById(productId);
+            productCacheService.evictProduct(productId);
+            unindexProduct(productId);
             System.out.println("✅ 商品刪除成功");
             
             return true;
@@ -565,6 +644,48 @@ public class ProductService {
 
     public void deleteProduct(Long id) {
         productRepository.deleteById(id);
+        productCacheService.evictProduct(id);
+        unindexProduct(id);
+    }
+
+    //關鍵字搜尋：索引取得排序後的 ID，再批次載入商品資料
+    @Transactional(readOnly = true)
+    public List<ProductDTO> searchActiveProducts(String keyword, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<Long> ids = productSearchIndex.search(keyword, size);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        Map<Long, ProductDTO> byId = productRepository.findActiveDTOsByIdIn(ids).stream()
+            .collect(Collectors.toMap(ProductDTO::getId, dto -> dto));
+        List<ProductDTO> dtos = new ArrayList<>();
+        for (Long id : ids) {
+            ProductDTO dto = byId.get(id);
+            if (dto != null) {
+                dtos.add(dto);
+            }
+        }
+        
+        attachSkusAndImages(dtos);
+        for (ProductDTO dto : dtos) {
+            applySkuPricing(dto, true);
+        }
+        return dtos;
+    }
+
+    //搜尋索引、分類統計、競標簿與到期排程同步（交易提交後生效）
+    private void indexProduct(Product product) {
+        productSearchIndex.index(product);
+        categoryFacetService.track(product);
+        auctionBook.refresh(product.getProductId());
+        auctionExpiryScheduler.schedule(product);
+    }
+
+    private void unindexProduct(Long productId) {
+        productSearchIndex.remove(productId);
+        categoryFacetService.untrack(productId);
+        auctionBook.refresh(productId);
     }
 
 }
@@ -1,6 +1,7 @@
 package com.example.demo.service;
 
 import com.example.demo.model.entity.ProductSku;
+import com.example.demo.repository.ProductRepository;
 import com.example.demo.repository.ProductSkuRepository;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -17,6 +18,8 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class ProductSkuService {
     private final ProductSkuRepository productSkuRepository;
+    private final ProductRepository productRepository;
+    private final ProductCacheService productCacheService;
     private String stableStringify(Map<String, Object> spec) throws Exception {
         return new ObjectMapper().writeValueAsString(new java.util.TreeMap<>(spec));
     }
@@ -52,6 +55,8 @@ public class ProductSkuService {
             }
             
             productSkuRepository.saveAll(skuList);
+            productRepository.refreshSkuAggregates(productId);
+            productCacheService.evictProduct(productId);
             System.out.println("✅ 成功建立 " + skuList.size() + " 個 SKU");
         } catch (Exception e) {
             e.printStackTrace();
@@ -66,5 +71,7 @@ public class ProductSkuService {
     @Transactional
     public void deleteSkusByProductId(Long productId) {
         productSkuRepository.deleteByProductId(productId);
+        productRepository.refreshSkuAggregates(productId);
+        productCacheService.evictProduct(productId);
     }
 }
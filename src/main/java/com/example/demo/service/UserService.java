@@ -33,6 +33,8 @@ public class UserService {
         return createUserWithEmailVerification(dto);
     }
 
+    //用戶與驗證信（寫入郵件佇列）同一交易，註冊不需等待寄信
+    @Transactional
     public User createUserWithEmailVerification(UserRegisterDTO dto) {
         if (userRepository.existsByUsername(dto.getUsername())) {
             throw new UsernameAlreadyRegisteredException("此用戶名已被使用");
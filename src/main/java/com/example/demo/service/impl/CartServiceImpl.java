@@ -1,46 +1,94 @@
 package com.example.demo.service.impl;
 
 import com.example.demo.model.dto.AddToCartDTO;
+import com.example.demo.model.dto.CartDeltaDTO;
 import com.example.demo.model.dto.CartResponseDTO;
 import com.example.demo.model.dto.CartItemDTO;
 import com.example.demo.model.entity.CartItem;
 import com.example.demo.model.entity.Product;
 import com.example.demo.model.entity.ProductSku;
 import com.example.demo.model.entity.ProductImage;
-import com.example.demo.repository.CartItemRepository;
 import com.example.demo.repository.ProductRepository;
 import com.example.demo.repository.ProductSkuRepository;
 import com.example.demo.repository.ProductImageRepository;
 import com.example.demo.service.CartService;
+import com.example.demo.service.CartStore;
+import com.example.demo.service.ProductCacheService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class CartServiceImpl implements CartService {
     
-    private final CartItemRepository cartItemRepository;
     private final ProductRepository productRepository;
     private final ProductSkuRepository productSkuRepository;
     private final ProductImageRepository productImageRepository;
+    private final CartStore cartStore;
+    private final ProductCacheService productCacheService;
 
     @Override
     public CartResponseDTO getCart(Long userId) {
         System.out.println("=== 取得購物車，用戶ID: " + userId + " ===");
         
-        List<CartItem> cartItems = cartItemRepository.findByUserId(userId);
-        System.out.println("找到 " + cartItems.size() + " 個購物車項目");
+        long version = productCacheService.version();
+        List<CartItem> cartItems = cartStore.snapshot(userId);
+        List<CartItemDTO> cartItemDTOs = render(cartItems);
         
-        List<CartItemDTO> cartItemDTOs = new ArrayList<>();
         BigDecimal totalAmount = BigDecimal.ZERO;
+        Map<Long, BigDecimal> prices = new HashMap<>();
+        for (CartItemDTO dto : cartItemDTOs) {
+            totalAmount = totalAmount.add(dto.getSubtotal());
+            prices.put(dto.getCartItemId(), unitPrice(dto));
+        }
+        cachePrices(userId, version, prices);
         
+        CartResponseDTO response = new CartResponseDTO();
+        response.setItems(cartItemDTOs);
+        response.setTotalAmount(totalAmount.doubleValue());
+        
+        System.out.println("=== 購物車回應完成，共 " + cartItemDTOs.size() + " 個項目，總金額: " + totalAmount + " ===");
+        return response;
+    }
+
+    //商品、SKU、第一張圖片各一次批次查詢後組裝
+    private List<CartItemDTO> render(List<CartItem> cartItems) {
+        if (cartItems.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Set<Long> productIds = new HashSet<>();
+        Set<Long> skuIds = new HashSet<>();
+        for (CartItem item : cartItems) {
+            productIds.add(item.getProductId());
+            if (item.getSkuId() != null) {
+                skuIds.add(item.getSkuId());
+            }
+        }
+        
+        Map<Long, Product> products = productRepository.findAllById(productIds).stream()
+            .collect(Collectors.toMap(Product::getProductId, Function.identity()));
+        Map<Long, ProductSku> skus = skuIds.isEmpty() ? new HashMap<>() :
+            productSkuRepository.findAllById(skuIds).stream()
+                .collect(Collectors.toMap(ProductSku::getSkuId, Function.identity()));
+        Map<Long, String> firstImages = new HashMap<>();
+        for (ProductImage image : productImageRepository.findFirstImagesByProductIdIn(productIds)) {
+            if (image.getImageUrl() != null && !image.getImageUrl().trim().isEmpty()) {
+                firstImages.putIfAbsent(image.getProductId(), image.getImageUrl());
+            }
+        }
+        
+        List<CartItemDTO> cartItemDTOs = new ArrayList<>();
         for (CartItem item : cartItems) {
             CartItemDTO dto = new CartItemDTO();
             dto.setCartItemId(item.getCartItemId());
@@ -48,40 +96,22 @@ public class CartServiceImpl implements CartService {
             dto.setSkuId(item.getSkuId());
             dto.setQuantity(item.getQuantity());
             
-            
-            
-           
-            Product product = productRepository.findById(item.getProductId()).orElse(null);
+            Product product = products.get(item.getProductId());
             if (product != null) {
+                ProductSku sku = item.getSkuId() != null ? skus.get(item.getSkuId()) : null;
                 dto.setProductName(product.getName());
                 
-           
-                String imageUrl = getProductImageUrl(product.getProductId(), item.getSkuId());
+                String imageUrl = getProductImageUrl(firstImages.get(product.getProductId()), sku, product);
                 dto.setImageUrl(imageUrl);
                 dto.setProductImage(imageUrl);
                 
-                if (item.getSkuId() != null) {
-                    ProductSku sku = productSkuRepository.findById(item.getSkuId()).orElse(null);
-                    if (sku != null) {
-                        dto.setPrice(sku.getPrice()); 
-                        dto.setSkuSpec(sku.getSpecJson()); 
-                        System.out.println("使用 SKU 價格: " + sku.getPrice() + ", 最終圖片: " + imageUrl);
-                    } else {
-                       
-                        dto.setPrice(product.getCurrentPrice());
-                        System.out.println("SKU 不存在，使用商品基本價格: " + product.getCurrentPrice());
-                    }
+                if (sku != null) {
+                    dto.setPrice(sku.getPrice()); 
+                    dto.setSkuSpec(sku.getSpecJson()); 
                 } else {
-                    
+                    // 單規格商品，或 SKU 已不存在時使用商品基本價格
                     dto.setPrice(product.getCurrentPrice());
-                    System.out.println("單規格商品價格: " + product.getCurrentPrice() + ", 最終圖片: " + imageUrl);
-                }
-                
-                if (dto.getPrice() != null) {
-                    BigDecimal itemTotal = dto.getPrice().multiply(new BigDecimal(dto.getQuantity()));
-                    totalAmount = totalAmount.add(itemTotal);
                 }
-                
             } else {
                 System.err.println("❌ 找不到商品 ID: " + item.getProductId());
                 dto.setProductName("商品不存在");
@@ -91,47 +121,72 @@ public class CartServiceImpl implements CartService {
             
             cartItemDTOs.add(dto);
         }
-        
-        CartResponseDTO response = new CartResponseDTO();
-        response.setItems(cartItemDTOs);
-        response.setTotalAmount(totalAmount.doubleValue());
-        
-        System.out.println("=== 購物車回應完成，共 " + cartItemDTOs.size() + " 個項目，總金額: " + totalAmount + " ===");
-        return response;
+        return cartItemDTOs;
     }
 
-    private String getProductImageUrl(Long productId, Long skuId) {
-        
-        List<ProductImage> productImages = productImageRepository.findByProductIdOrderBySortOrderAsc(productId);
-        if (productImages != null && !productImages.isEmpty()) {
-            String imageUrl = productImages.get(0).getImageUrl();
-            if (imageUrl != null && !imageUrl.trim().isEmpty()) {
-                System.out.println("使用多圖第一張: " + imageUrl);
-                return imageUrl;
+    //圖片優先順序：多圖第一張 → SKU 圖片 → 商品主圖 → 預設圖片
+    private String getProductImageUrl(String firstImage, ProductSku sku, Product product) {
+        if (firstImage != null) {
+            return firstImage;
+        }
+        if (sku != null && sku.getImageUrl() != null && !sku.getImageUrl().trim().isEmpty()) {
+            return sku.getImageUrl();
+        }
+        if (product.getMainImageUrl() != null && !product.getMainImageUrl().trim().isEmpty()) {
+            return product.getMainImageUrl();
+        }
+        return "/uploads/default.png";
+    }
+
+    //異動結果：只組裝變動的項目，總計用購物車上快取的單價計算（沒有快取的項目才一併查詢）
+    private CartDeltaDTO delta(Long userId, List<CartItem> cartItems, Long changedId, Long removedCartItemId) {
+        long version = productCacheService.version();
+        Map<Long, BigDecimal> prices = cartStore.withCart(userId, cart -> cart.prices(version));
+
+        List<CartItem> toRender = new ArrayList<>();
+        for (CartItem item : cartItems) {
+            if (item.getCartItemId().equals(changedId) || !prices.containsKey(item.getCartItemId())) {
+                toRender.add(item);
             }
         }
-        
-        
-        if (skuId != null) {
-            ProductSku sku = productSkuRepository.findById(skuId).orElse(null);
-            if (sku != null && sku.getImageUrl() != null && !sku.getImageUrl().trim().isEmpty()) {
-                System.out.println("使用 SKU 圖片: " + sku.getImageUrl());
-                return sku.getImageUrl();
+        CartDeltaDTO delta = new CartDeltaDTO();
+        for (CartItemDTO dto : render(toRender)) {
+            if (dto.getCartItemId().equals(changedId)) {
+                delta.setItem(dto);
             }
+            prices.put(dto.getCartItemId(), unitPrice(dto));
         }
 
-        Product product = productRepository.findById(productId).orElse(null);
-        if (product != null && product.getMainImageUrl() != null && !product.getMainImageUrl().trim().isEmpty()) {
-            System.out.println("使用商品主圖: " + product.getMainImageUrl());
-            return product.getMainImageUrl();
+        BigDecimal amount = BigDecimal.ZERO;
+        int quantity = 0;
+        for (CartItem item : cartItems) {
+            amount = amount.add(prices.get(item.getCartItemId()).multiply(new BigDecimal(item.getQuantity())));
+            quantity += item.getQuantity();
         }
-        System.out.println("使用預設圖片");
-        return "/uploads/default.png";
+        cachePrices(userId, version, prices);
+        delta.setRemovedCartItemId(removedCartItemId);
+        delta.setTotalAmount(amount.doubleValue());
+        delta.setTotalQuantity(quantity);
+        return delta;
+    }
+
+    //組裝期間商品有異動（版本已變）時不寫入，避免留下舊單價
+    private void cachePrices(Long userId, long version, Map<Long, BigDecimal> prices) {
+        cartStore.withCart(userId, cart -> {
+            if (productCacheService.version() == version) {
+                cart.cachePrices(version, prices);
+            }
+            return null;
+        });
+    }
+
+    private static BigDecimal unitPrice(CartItemDTO dto) {
+        return dto.getPrice() != null ? dto.getPrice() : BigDecimal.ZERO;
     }
 
     @Override
     @Transactional
-    public CartResponseDTO addToCart(Long userId, AddToCartDTO dto) {
+    public CartDeltaDTO addToCart(Long userId, AddToCartDTO dto) {
         System.out.println("=== 加入購物車：用戶ID=" + userId + ", 商品ID=" + dto.getProductId() + ", SKU ID=" + dto.getSkuId() + ", 數量=" + dto.getQuantity() + " ===");
         Product product = productRepository.findById(dto.getProductId()).orElse(null);
         if (product == null) {
@@ -145,70 +200,42 @@ public class CartServiceImpl implements CartService {
             }
         }
         
-       
-        Optional<CartItem> existingItemOpt;
-        if (dto.getSkuId() != null) {
-            
-            existingItemOpt = cartItemRepository.findByUserIdAndProductIdAndSkuId(
-                userId, dto.getProductId(), dto.getSkuId());
-        } else {
-            
-            existingItemOpt = cartItemRepository.findByUserIdAndProductIdAndSkuIdIsNull(
-                userId, dto.getProductId());
-        }
-        
-        if (existingItemOpt.isPresent()) {
-            
-            CartItem existingItem = existingItemOpt.get();
-            existingItem.setQuantity(existingItem.getQuantity() + dto.getQuantity());
-            cartItemRepository.save(existingItem);
-            System.out.println("✅ 更新現有項目數量: " + existingItem.getQuantity());
-        } else {
-           
-            CartItem newItem = new CartItem();
-            newItem.setUserId(userId);
-            newItem.setProductId(dto.getProductId());
-            newItem.setSkuId(dto.getSkuId());
-            newItem.setQuantity(dto.getQuantity());
-            newItem.setAddedTime(LocalDateTime.now());
-            
+        CartItem[] changed = new CartItem[1];
+        List<CartItem> cartItems = cartStore.withCart(userId, cart -> {
             try {
-                cartItemRepository.save(newItem);
-                System.out.println("✅ 新增購物車項目成功");
+                changed[0] = cart.add(dto.getProductId(), dto.getSkuId(), dto.getQuantity());
             } catch (Exception e) {
                 System.err.println("❌ 新增購物車項目失敗: " + e.getMessage());
                 throw new RuntimeException("新增購物車失敗", e);
             }
-        }
-        
-        return getCart(userId);
+            return cart.items();
+        });
+        System.out.println("✅ 購物車項目數量: " + changed[0].getQuantity());
+        return delta(userId, cartItems, changed[0].getCartItemId(), null);
     }
 
 
 
     @Override
-    @Transactional
-    public CartResponseDTO updateCartItem(Long userId, Long cartItemId, Integer quantity) {
+    public CartDeltaDTO updateCartItem(Long userId, Long cartItemId, Integer quantity) {
         System.out.println("=== 更新購物車項目：用戶ID=" + userId + ", 項目ID=" + cartItemId + ", 數量=" + quantity + " ===");
         
         
-        Optional<CartItem> itemOpt = cartItemRepository.findByCartItemIdAndUserId(cartItemId, userId);
-        
-        if (itemOpt.isPresent()) {
-            CartItem item = itemOpt.get();
-            if (quantity > 0) {
-                item.setQuantity(quantity);
-                cartItemRepository.save(item);
+        Long[] removed = new Long[1];
+        List<CartItem> cartItems = cartStore.withCart(userId, cart -> {
+            if (cart.get(cartItemId) == null) {
+                System.err.println("❌ 找不到購物車項目: " + cartItemId);
+            } else if (quantity > 0) {
+                cart.setQuantity(cartItemId, quantity);
                 System.out.println("✅ 更新商品數量: " + quantity);
             } else {
-                cartItemRepository.delete(item);
+                cart.remove(cartItemId);
+                removed[0] = cartItemId;
                 System.out.println("✅ 數量為 0，刪除項目");
             }
-        } else {
-            System.err.println("❌ 找不到購物車項目: " + cartItemId);
-        }
-        
-        return getCart(userId);
+            return cart.items();
+        });
+        return delta(userId, cartItems, cartItemId, removed[0]);
     }
     
     @Transactional
@@ -216,10 +243,8 @@ public class CartServiceImpl implements CartService {
         try {
             System.out.println("🗑️ 開始清空用戶購物車: " + userId);
             
-            List<CartItem> userCartItems = cartItemRepository.findByUserId(userId);
-            int itemCount = userCartItems.size();
+            int itemCount = cartStore.clear(userId);
             if (itemCount > 0) {
-                cartItemRepository.deleteByUserId(userId);
                 System.out.println("✅ 已清空用戶購物車: " + itemCount + " 個項目");
             } else {
                 System.out.println("ℹ️ 用戶購物車已經是空的");
@@ -235,17 +260,19 @@ public class CartServiceImpl implements CartService {
 
 
     @Override
-    @Transactional
-    public void removeCartItem(Long userId, Long cartItemId) {
+    public CartDeltaDTO removeCartItem(Long userId, Long cartItemId) {
         System.out.println("=== 移除購物車項目：用戶ID=" + userId + ", 項目ID=" + cartItemId + " ===");
         
-        int deletedCount = cartItemRepository.deleteByCartItemIdAndUserId(cartItemId, userId);
-        if (deletedCount > 0) {
+        boolean[] deleted = new boolean[1];
+        List<CartItem> cartItems = cartStore.withCart(userId, cart -> {
+            deleted[0] = cart.remove(cartItemId);
+            return cart.items();
+        });
+        if (deleted[0]) {
             System.out.println("✅ 移除購物車項目成功");
         } else {
             System.err.println("❌ 找不到要移除的購物車項目");
         }
+        return delta(userId, cartItems, null, deleted[0] ? cartItemId : null);
     }
 }
-
-
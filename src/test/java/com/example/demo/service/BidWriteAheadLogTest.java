@@ -0,0 +1,248 @@
+package com.example.demo.service;
+
+import com.example.demo.model.entity.Bid;
+import com.example.demo.model.entity.BidWalCheckpoint;
+import com.example.demo.repository.BidWalCheckpointRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+//出價日誌：重啟重播、同時出價合併寫入、失敗批次拆開重試（資料庫以 mock 代替）
+@ExtendWith(MockitoExtension.class)
+class BidWriteAheadLogTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private BidWalCheckpointRepository bidWalCheckpointRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private BidWriteAheadLog wal;
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() {
+        file = dir.resolve("bids.wal");
+        ReflectionTestUtils.setField(wal, "enabled", true);
+        ReflectionTestUtils.setField(wal, "file", file.toString());
+        ReflectionTestUtils.setField(wal, "batchSize", 500);
+        // 測試中手動 flush，背景執行緒不介入
+        ReflectionTestUtils.setField(wal, "flushMs", 60_000L);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        wal.stop();
+    }
+
+    @Test
+    void replaysEntriesAfterCheckpoint() throws Exception {
+        LocalDateTime t = LocalDateTime.now();
+        Files.writeString(file,
+            "1,7,2,110," + t + "\n" +
+            "2,7,3,120," + t + "\n" +
+            "3,7,2,130," + t + "\n" +
+            "4,7,3");
+        BidWalCheckpoint checkpoint = new BidWalCheckpoint();
+        checkpoint.setId(1);
+        checkpoint.setLastSequence(1L);
+        when(bidWalCheckpointRepository.findById(1)).thenReturn(Optional.of(checkpoint));
+
+        wal.init();
+
+        assertEquals(2, insertedBids().get(0).size());
+        verify(jdbcTemplate).update(startsWith("UPDATE bid_wal_checkpoint"), eq(3L), any(Timestamp.class));
+        assertEquals(0, Files.size(file));
+
+        wal.append(bid(7L, 3L, "140"));
+        assertTrue(Files.readString(file).startsWith("4,"));
+    }
+
+    @Test
+    void concurrentBidsAreWrittenInOneBatch() throws Exception {
+        when(bidWalCheckpointRepository.findById(1)).thenReturn(Optional.empty());
+        wal.init();
+
+        int threads = 20;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            long bidder = i;
+            futures.add(pool.submit(() -> {
+                start.await();
+                wal.append(bid(7L, bidder, String.valueOf(110 + bidder * 10)));
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        pool.shutdown();
+        assertEquals(threads, Files.readAllLines(file).size());
+
+        wal.flush();
+
+        List<List<Object[]>> batches = insertedBids();
+        assertEquals(1, batches.size());
+        assertEquals(threads, batches.get(0).size());
+        verify(jdbcTemplate).update(startsWith("UPDATE bid_wal_checkpoint"), eq((long) threads), any(Timestamp.class));
+        assertEquals(0, Files.size(file));
+    }
+
+    @Test
+    void failingBatchIsSplitAndBadEntryDeadLettered() throws Exception {
+        when(bidWalCheckpointRepository.findById(1)).thenReturn(Optional.empty());
+        wal.init();
+        // 金額 13 的出價寫入時違反資料庫限制
+        when(jdbcTemplate.batchUpdate(startsWith("INSERT INTO bids"), anyList())).thenAnswer(inv -> {
+            List<Object[]> rows = inv.getArgument(1);
+            for (Object[] row : rows) {
+                if (new BigDecimal("13").compareTo((BigDecimal) row[2]) == 0) {
+                    throw new DataIntegrityViolationException("bad row");
+                }
+            }
+            return new int[rows.size()];
+        });
+
+        List<Long> retired = new ArrayList<>();
+        wal.onDeadLetter(retired::add);
+
+        wal.append(bid(7L, 2L, "110"));
+        wal.append(bid(7L, 3L, "13"));
+        wal.append(bid(7L, 2L, "130"));
+
+        // 重試次數用完前留在佇列
+        for (int i = 1; i < BidWriteAheadLog.MAX_WRITE_ATTEMPTS; i++) {
+            wal.flush();
+        }
+        verify(jdbcTemplate, never()).update(startsWith("INSERT INTO bid_wal_dead_letter"), any(Object[].class));
+        assertEquals(3, Files.readAllLines(file).size());
+        assertTrue(retired.isEmpty());
+
+        wal.flush();
+
+        verify(jdbcTemplate).update(startsWith("INSERT INTO bid_wal_dead_letter"), eq(2L), eq(7L), eq(3L),
+            startsWith("2,7,3,13,"), eq("bad row"), any(Timestamp.class));
+        verify(jdbcTemplate).update(startsWith("UPDATE bid_wal_checkpoint"), eq(3L), any(Timestamp.class));
+        assertEquals(0, Files.size(file));
+        assertEquals(List.of(7L), retired);
+
+        // 已處理完畢，不再重試
+        clearInvocations(jdbcTemplate);
+        wal.flush();
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void entriesStayQueuedWhileDatabaseIsDown() throws Exception {
+        when(bidWalCheckpointRepository.findById(1)).thenReturn(Optional.empty());
+        wal.init();
+        when(jdbcTemplate.batchUpdate(startsWith("INSERT INTO bids"), anyList()))
+            .thenThrow(new CannotGetJdbcConnectionException("down"));
+
+        wal.append(bid(7L, 2L, "110"));
+        wal.append(bid(7L, 3L, "120"));
+        for (int i = 0; i < BidWriteAheadLog.MAX_WRITE_ATTEMPTS + 1; i++) {
+            wal.flush();
+        }
+
+        assertEquals(2, Files.readAllLines(file).size());
+        verify(jdbcTemplate, never()).update(startsWith("UPDATE bid_wal_checkpoint"), any(Object[].class));
+        verify(jdbcTemplate, never()).update(startsWith("INSERT INTO bid_wal_dead_letter"), any(Object[].class));
+
+        reset(jdbcTemplate);
+        wal.flush();
+
+        assertEquals(2, insertedBids().get(0).size());
+        assertEquals(0, Files.size(file));
+    }
+
+    @Test
+    void transientFailureIsRetriedInsteadOfDeadLettered() throws Exception {
+        when(bidWalCheckpointRepository.findById(1)).thenReturn(Optional.empty());
+        wal.init();
+        List<Long> retired = new ArrayList<>();
+        wal.onDeadLetter(retired::add);
+        // auction_state 被直購交易鎖住：單筆寫入也逾時，dead letter 則可以寫入
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(inv -> {
+            if (inv.<String>getArgument(0).startsWith("UPDATE auction_state")) {
+                throw new CannotAcquireLockException("lock wait timeout");
+            }
+            return new int[inv.<List<?>>getArgument(1).size()];
+        });
+
+        wal.append(bid(7L, 2L, "110"));
+        wal.append(bid(7L, 3L, "120"));
+        for (int i = 0; i < BidWriteAheadLog.MAX_WRITE_ATTEMPTS + 1; i++) {
+            wal.flush();
+        }
+
+        verify(jdbcTemplate, never()).update(startsWith("INSERT INTO bid_wal_dead_letter"), any(Object[].class));
+        verify(jdbcTemplate, never()).update(startsWith("UPDATE bid_wal_checkpoint"), any(Object[].class));
+        assertEquals(2, Files.readAllLines(file).size());
+        assertTrue(retired.isEmpty());
+
+        // 鎖釋放後依序寫入
+        reset(jdbcTemplate);
+        wal.flush();
+
+        assertEquals(2, insertedBids().get(0).size());
+        verify(jdbcTemplate).update(startsWith("UPDATE bid_wal_checkpoint"), eq(2L), any(Timestamp.class));
+        assertEquals(0, Files.size(file));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<Object[]>> insertedBids() {
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(startsWith("INSERT INTO bids"), rows.capture());
+        return rows.getAllValues();
+    }
+
+    private static Bid bid(Long productId, Long bidderId, String amount) {
+        Bid bid = new Bid();
+        bid.setProductId(productId);
+        bid.setBidderId(bidderId);
+        bid.setAmount(new BigDecimal(amount));
+        bid.setBidTime(LocalDateTime.now());
+        return bid;
+    }
+}